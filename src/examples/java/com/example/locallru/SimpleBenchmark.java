@@ -1,6 +1,7 @@
 package com.example.locallru.examples;
 
 import com.example.locallru.LocalLruCache;
+import com.example.locallru.Ticker;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -24,14 +25,18 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * The benchmark performs a mix of get and put operations concurrently across multiple threads.
  * It compares:
- * 1. {@link LocalLruCache}
- * 2. {@link java.util.concurrent.ConcurrentHashMap} (as a baseline for raw concurrent map speed, not LRU)
- * 3. A synchronized {@link LinkedHashMap} (to show why per-thread or more advanced concurrent caches are needed)
+ * 1. {@link LocalLruCache} (default thread-local mode)
+ * 2. {@link LocalLruCache} with a 60s TTL, reading the system clock vs. a {@link Ticker#cached cached clock}
+ * 3. {@link LocalLruCache} in {@link LocalLruCache.Mode#SHARED} mode (one lock-striped LRU for all threads)
+ * 4. {@link java.util.concurrent.ConcurrentHashMap} (as a baseline for raw concurrent map speed, not LRU)
+ * 5. A synchronized {@link LinkedHashMap} (to show why per-thread or more advanced concurrent caches are needed)
  * <p>
  * Operations:
  * - 80% GET operations
  * - 20% PUT operations
  * Keys are chosen randomly from a pre-populated set.
+ * <p>
+ * The shared and map baselines are then re-run with a read-heavy mix (98% GET, 2% PUT).
  */
 public class SimpleBenchmark {
 
@@ -40,6 +45,7 @@ public class SimpleBenchmark {
     private static final int CACHE_CAPACITY = 1000;
     private static final int PRE_POPULATE_SIZE = CACHE_CAPACITY * 2; // Keys to choose from
     private static final double PUT_RATIO = 0.20; // 20% Puts, 80% Gets
+    private static final double READ_HEAVY_PUT_RATIO = 0.02; // 2% Puts, 98% Gets
 
     private static List<String> keys = new ArrayList<>(PRE_POPULATE_SIZE);
 
@@ -54,7 +60,7 @@ public class SimpleBenchmark {
         System.out.printf("Threads: %d, Operations/Thread: %d, Cache Capacity: %d, Put Ratio: %.2f%n%n",
                 NUM_THREADS, NUM_OPERATIONS_PER_THREAD, CACHE_CAPACITY, PUT_RATIO);
 
-        runBenchmark("LocalLruCache", () -> {
+        CacheFactory localLru = () -> {
             LocalLruCache cache = LocalLruCache.initialize(CACHE_CAPACITY, 0); // No TTL for benchmark simplicity
             return (key, value) -> {
                 if (value != null) {
@@ -63,9 +69,21 @@ public class SimpleBenchmark {
                     cache.getItem(key);
                 }
             };
-        });
+        };
+
+        CacheFactory sharedLru = () -> {
+            LocalLruCache cache = LocalLruCache.initialize(CACHE_CAPACITY, 0,
+                    new LocalLruCache.Options().mode(LocalLruCache.Mode.SHARED));
+            return (key, value) -> {
+                if (value != null) {
+                    cache.addItem(key, value);
+                } else {
+                    cache.getItem(key);
+                }
+            };
+        };
 
-        runBenchmark("ConcurrentHashMap", () -> {
+        CacheFactory concurrentHashMap = () -> {
             Map<String, String> map = new ConcurrentHashMap<>(CACHE_CAPACITY);
             // Populate slightly to mimic cache behavior, though CHM doesn't evict
             for(int i=0; i< Math.min(PRE_POPULATE_SIZE, CACHE_CAPACITY); i++){
@@ -78,9 +96,9 @@ public class SimpleBenchmark {
                     map.get(key);
                 }
             };
-        });
+        };
 
-        runBenchmark("SynchronizedLinkedHashMap (LRU)", () -> {
+        CacheFactory synchronizedLinkedHashMap = () -> {
             Map<String, String> map = Collections.synchronizedMap(
                 new LinkedHashMap<String, String>(CACHE_CAPACITY, 0.75f, true) {
                     @Override
@@ -99,7 +117,46 @@ public class SimpleBenchmark {
                     map.get(key);   // get is synchronized
                 }
             };
-        });
+        };
+
+        Ticker.CachedTicker cachedTicker = Ticker.cached(1, TimeUnit.MILLISECONDS);
+        CacheFactory localLruTtlSystemClock = () -> {
+            LocalLruCache cache = LocalLruCache.initialize(CACHE_CAPACITY, 60);
+            return (key, value) -> {
+                if (value != null) {
+                    cache.addItem(key, value);
+                } else {
+                    cache.getItem(key);
+                }
+            };
+        };
+
+        CacheFactory localLruTtlCachedClock = () -> {
+            LocalLruCache cache = LocalLruCache.initialize(CACHE_CAPACITY, 60,
+                    new LocalLruCache.Options().ticker(cachedTicker));
+            return (key, value) -> {
+                if (value != null) {
+                    cache.addItem(key, value);
+                } else {
+                    cache.getItem(key);
+                }
+            };
+        };
+
+        runBenchmark("LocalLruCache", localLru, PUT_RATIO);
+        runBenchmark("LocalLruCache (TTL, system clock)", localLruTtlSystemClock, PUT_RATIO);
+        runBenchmark("LocalLruCache (TTL, cached clock)", localLruTtlCachedClock, PUT_RATIO);
+        runBenchmark("LocalLruCache (shared)", sharedLru, PUT_RATIO);
+        runBenchmark("ConcurrentHashMap", concurrentHashMap, PUT_RATIO);
+        runBenchmark("SynchronizedLinkedHashMap (LRU)", synchronizedLinkedHashMap, PUT_RATIO);
+
+        // Read-heavy mix: where a lock-free read path matters most for shared caches.
+        System.out.printf("Read-heavy mix, Put Ratio: %.2f%n%n", READ_HEAVY_PUT_RATIO);
+        runBenchmark("LocalLruCache (shared)", sharedLru, READ_HEAVY_PUT_RATIO);
+        runBenchmark("ConcurrentHashMap", concurrentHashMap, READ_HEAVY_PUT_RATIO);
+        runBenchmark("SynchronizedLinkedHashMap (LRU)", synchronizedLinkedHashMap, READ_HEAVY_PUT_RATIO);
+
+        cachedTicker.close();
     }
 
     @FunctionalInterface
@@ -112,7 +169,7 @@ public class SimpleBenchmark {
         CacheOperation createCache();
     }
 
-    private static void runBenchmark(String cacheName, CacheFactory factory) throws InterruptedException {
+    private static void runBenchmark(String cacheName, CacheFactory factory, double putRatio) throws InterruptedException {
         System.out.println("Benchmarking: " + cacheName);
         CacheOperation cacheOps = factory.createCache(); // Initialize cache instance(s)
 
@@ -126,7 +183,7 @@ public class SimpleBenchmark {
                 Random threadRandom = new Random();
                 for (int j = 0; j < NUM_OPERATIONS_PER_THREAD / 10; j++) { // 10% of ops for warmup
                     String key = keys.get(threadRandom.nextInt(PRE_POPULATE_SIZE));
-                    if (threadRandom.nextDouble() < PUT_RATIO) {
+                    if (threadRandom.nextDouble() < putRatio) {
                         cacheOps.execute(key, "warmup_value_" + threadRandom.nextInt());
                     } else {
                         cacheOps.execute(key, null);
@@ -143,7 +200,7 @@ public class SimpleBenchmark {
                 Random threadRandom = new Random();
                 for (int j = 0; j < NUM_OPERATIONS_PER_THREAD / 20; j++) { // 5% of ops for warmup
                     String key = keys.get(threadRandom.nextInt(PRE_POPULATE_SIZE));
-                    if (threadRandom.nextDouble() < PUT_RATIO) {
+                    if (threadRandom.nextDouble() < putRatio) {
                         cacheOps.execute(key, "warmup_value_" + threadRandom.nextInt());
                     } else {
                         cacheOps.execute(key, null);
@@ -163,7 +220,7 @@ public class SimpleBenchmark {
                 Random threadRandom = new Random(); // Each thread gets its own Random
                 for (int j = 0; j < NUM_OPERATIONS_PER_THREAD; j++) {
                     String key = keys.get(threadRandom.nextInt(PRE_POPULATE_SIZE));
-                    if (threadRandom.nextDouble() < PUT_RATIO) {
+                    if (threadRandom.nextDouble() < putRatio) {
                         // PUT operation
                         cacheOps.execute(key, "value" + threadRandom.nextInt());
                     } else {
@@ -0,0 +1,164 @@
+package com.example.locallru;
+
+import com.example.locallru.LocalLruCache.CacheEntry;
+
+/**
+ * Eviction ordering for the node-based stores ({@link PolicyStore} and the segments of
+ * {@link SharedLruStore}).
+ * <p>
+ * The owning store keeps the key-to-{@link Node} mapping and reports every insert, access and
+ * removal here; when it is over capacity it asks for a victim with {@link #selectVictim()}.
+ * Implementations are not thread-safe; callers confine them to one thread or guard them with a lock.
+ */
+abstract class AccessOrder {
+
+    /**
+     * Creates the ordering for the given policy.
+     * @param policy Policy selected on the handler.
+     * @param capacity Max entries of the owning store.
+     */
+    static AccessOrder create(LocalLruCache.Policy policy, int capacity) {
+        return (policy == LocalLruCache.Policy.WINDOW_TINY_LFU) ? new WindowTinyLfuOrder(capacity) : new Lru();
+    }
+
+    /** Called after a new node is added to the store. */
+    abstract void recordInsert(Node node);
+
+    /** Called on a hit, or when an existing node's value is replaced. */
+    abstract void recordAccess(Node node);
+
+    /** Called after a node is removed from the store for any reason other than {@link #selectVictim()}. */
+    abstract void recordRemoval(Node node);
+
+    /**
+     * Picks and unlinks the next node to evict. The store must then drop it from its mapping.
+     * @return The victim, or null if the order is empty.
+     */
+    abstract Node selectVictim();
+
+    /**
+     * Called when the owning store's capacity changes, before it evicts down to the new capacity.
+     * @param capacity New max entries of the owning store.
+     */
+    void setCapacity(int capacity) {
+        // LRU keeps no capacity-dependent state.
+    }
+
+    /**
+     * A mapping plus its links in one of the order's queues. Links are only touched by the order.
+     */
+    static final class Node {
+        static final byte NONE = 0;
+
+        final String key;
+        volatile CacheEntry<?> value;
+        Node prev;
+        Node next;
+        /** Queue the node currently sits in, or {@link #NONE} once removed. */
+        byte queue;
+
+        Node(String key, CacheEntry<?> value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /** False once removed, so stale references (e.g. buffered reads) are ignored. */
+        boolean isLinked() {
+            return queue != NONE;
+        }
+    }
+
+    /**
+     * An intrusive doubly-linked queue of nodes, eldest at the head.
+     */
+    static final class NodeQueue {
+        private final byte id;
+        private Node head;
+        private Node tail;
+        private int size;
+
+        NodeQueue(byte id) {
+            this.id = id;
+        }
+
+        Node peekFirst() {
+            return head;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            node.queue = id;
+            size++;
+        }
+
+        void remove(Node node) {
+            Node prev = node.prev;
+            Node next = node.next;
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                next.prev = prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.queue = Node.NONE;
+            size--;
+        }
+
+        void moveToLast(Node node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Plain recency order: the least recently used node is evicted first.
+     */
+    static final class Lru extends AccessOrder {
+        private final NodeQueue queue = new NodeQueue((byte) 1);
+
+        @Override
+        void recordInsert(Node node) {
+            queue.addLast(node);
+        }
+
+        @Override
+        void recordAccess(Node node) {
+            queue.moveToLast(node);
+        }
+
+        @Override
+        void recordRemoval(Node node) {
+            if (node.isLinked()) {
+                queue.remove(node);
+            }
+        }
+
+        @Override
+        Node selectVictim() {
+            Node eldest = queue.peekFirst();
+            if (eldest != null) {
+                queue.remove(eldest);
+            }
+            return eldest;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.locallru;
+
+import com.example.locallru.LocalLruCache.CacheEntry;
+import com.example.locallru.LocalLruCache.CacheStore;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread LRU store whose memory is allocated once, for the handler's full capacity, when the thread
+ * first uses the handler. Enabled with {@link LocalLruCache.Options#arrayBackedStorage()}.
+ * <p>
+ * Entries live in slots of parallel arrays (keys, cached key hashes, values, expiration times), indexed
+ * and linked into LRU order by the {@link LruSlotTable} it extends. Overwrites update a slot in place and
+ * evictions recycle the evicted slot, so the handler's {@link #getValue(String, long)} /
+ * {@link #putValue(String, Object, long)} path allocates nothing.
+ * <p>
+ * Since the table is probed by cached {@code String} hash codes, it can also be probed with a
+ * {@link KeyProbe}, whose characters or bytes are hashed and compared against stored keys in place.
+ * <p>
+ * With a TTL, every entry has the same time to live, so entries expire in the order they were written.
+ * A second index-linked list in write order therefore replaces the {@link TimerWheel}: {@link #cleanUp(long)}
+ * pops expired entries off its head.
+ * <p>
+ * Like {@code SimpleLruCache} it is not thread-safe and is only ever used by its owning thread.
+ */
+final class ArrayLruStore extends LruSlotTable implements CacheStore {
+    private int limit; // Max entries; at most capacity
+
+    private final String[] keys;
+    private final int[] hashes;
+    private final Object[] values;
+
+    // Write order, for TTL; all null if the handler has no TTL.
+    private final long[] expirations;
+    private final int[] writePrev;
+    private final int[] writeNext;
+
+    private int writeHead = NONE; // Oldest write, i.e. the next to expire
+    private int writeTail = NONE;
+
+    private final StatsCounter stats; // null unless the handler records stats
+
+    /**
+     * Creates an ArrayLruStore.
+     * @param capacity Max entries. Must be positive and at most {@link #MAX_CAPACITY}.
+     * @param expiring Whether entries have a TTL.
+     * @param stats Counters for this thread, or null.
+     */
+    ArrayLruStore(int capacity, boolean expiring, StatsCounter stats) {
+        super(capacity);
+        this.limit = capacity;
+        this.stats = stats;
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.values = new Object[capacity];
+        this.expirations = expiring ? new long[capacity] : null;
+        this.writePrev = expiring ? new int[capacity] : null;
+        this.writeNext = expiring ? new int[capacity] : null;
+    }
+
+    /**
+     * Allocation-free read used by the handler.
+     * @param nowMillis Current time from the handler's {@link Ticker}; ignored without a TTL.
+     * @return The value, or null if absent or expired (an expired entry is removed).
+     */
+    @Override
+    public Object getValue(String key, long nowMillis) {
+        int bucket = find(key, spread(key.hashCode()));
+        if (bucket < 0) {
+            return null;
+        }
+        return hit(bucket, table[bucket] - 1, nowMillis);
+    }
+
+    /** Like {@link #getValue(String, long)}, probing with the handle's precomputed hash. */
+    @Override
+    public Object getValue(CacheKey key, long nowMillis) {
+        int bucket = find(key.key, key.tableHash);
+        if (bucket < 0) {
+            return null;
+        }
+        return hit(bucket, table[bucket] - 1, nowMillis);
+    }
+
+    /** Like {@link #getValue(String, long)}, comparing the probe's characters or bytes in place. */
+    @Override
+    public Object getValue(KeyProbe key, long nowMillis) {
+        int hash = spread(key.hash());
+        int mask = table.length - 1;
+        for (int bucket = hash & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = table[bucket] - 1;
+            if (hashes[slot] == hash && key.matches(keys[slot])) {
+                return hit(bucket, slot, nowMillis);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Allocation-free write used by the handler. Overwrites reuse the key's slot; a new key takes a
+     * free slot, evicting the least recently used entry first if the store is full.
+     * @param expirationTimeMillis Absolute expiration time; ignored without a TTL.
+     */
+    @Override
+    public int putValue(String key, Object value, long expirationTimeMillis) {
+        return put(key, spread(key.hashCode()), value, expirationTimeMillis);
+    }
+
+    /** Like {@link #putValue(String, Object, long)}, storing the handle's {@code String} under its precomputed hash. */
+    @Override
+    public int putValue(CacheKey key, Object value, long expirationTimeMillis) {
+        return put(key.key, key.tableHash, value, expirationTimeMillis);
+    }
+
+    private int put(String key, int hash, Object value, long expirationTimeMillis) {
+        int bucket = find(key, hash);
+        int evicted = 0;
+        int slot;
+        if (bucket >= 0) {
+            slot = table[bucket] - 1;
+            moveToTail(slot);
+            if (expirations != null) {
+                unlinkWrite(slot);
+            }
+        } else {
+            if (size >= limit) {
+                evictEldest();
+                evicted = 1;
+                bucket = find(key, hash); // The eviction may have opened a hole earlier on the key's probe path
+            }
+            slot = insert(bucket);
+            keys[slot] = key;
+            hashes[slot] = hash;
+        }
+        values[slot] = value;
+        if (expirations != null) {
+            expirations[slot] = expirationTimeMillis;
+            linkLastWrite(slot);
+        }
+        return evicted;
+    }
+
+    @Override
+    public CacheEntry<?> getEntry(String key) {
+        int bucket = find(key, spread(key.hashCode()));
+        if (bucket < 0) {
+            return null;
+        }
+        int slot = table[bucket] - 1;
+        moveToTail(slot);
+        // A snapshot; with nowMillis 0 the "TTL" argument is taken as the absolute expiration time.
+        return new CacheEntry<>(key, values[slot], (expirations != null) ? expirations[slot] : 0, 0, 1);
+    }
+
+    @Override
+    public int putEntry(String key, CacheEntry<?> value) {
+        return putValue(key, value.value, value.expirationTimeMillis);
+    }
+
+    @Override
+    public void removeEntry(String key) {
+        int bucket = find(key, spread(key.hashCode()));
+        if (bucket >= 0) {
+            remove(bucket, table[bucket] - 1);
+        }
+    }
+
+    @Override
+    public void expireEntry(String key, CacheEntry<?> expected) {
+        int bucket = find(key, spread(key.hashCode()));
+        if (bucket >= 0) {
+            int slot = table[bucket] - 1;
+            // Entries are snapshots, so compare what they were taken from.
+            if (values[slot] == expected.value
+                    && (expirations == null || expirations[slot] == expected.expirationTimeMillis)) {
+                remove(bucket, slot);
+                if (stats != null) {
+                    stats.expirations++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** The arrays are allocated up front, so this does not depend on the number of entries. */
+    @Override
+    public long estimatedMemoryBytes() {
+        long perSlot = 4 + 4 + 4 + 4 + 4 + ((expirations != null) ? 8 + 4 + 4 : 0);
+        return table.length * 4L + capacity * perSlot;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        reset();
+        writeHead = writeTail = NONE;
+    }
+
+    /**
+     * Lowers or raises the max number of entries, up to the capacity the arrays were allocated for.
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        this.limit = Math.min(capacity, this.capacity);
+        while (size > limit) {
+            evictEldest();
+        }
+    }
+
+    @Override
+    public StatsCounter stats() {
+        return stats;
+    }
+
+    @Override
+    public void cleanUp(long nowMillis) {
+        if (expirations == null) {
+            return;
+        }
+        while (writeHead != NONE && nowMillis > expirations[writeHead]) {
+            int slot = writeHead;
+            remove(find(keys[slot], hashes[slot]), slot);
+            if (stats != null) {
+                stats.expirations++;
+            }
+        }
+    }
+
+    private void evictEldest() {
+        remove(find(keys[head], hashes[head]), head);
+        if (stats != null) {
+            stats.evictions++;
+        }
+    }
+
+    /**
+     * @return The key's bucket, or {@code ~bucket} of the empty bucket where it would be inserted.
+     */
+    private int find(String key, int hash) {
+        int mask = table.length - 1;
+        int bucket = hash & mask;
+        while (true) {
+            int entry = table[bucket];
+            if (entry == 0) {
+                return ~bucket;
+            }
+            int slot = entry - 1;
+            if (hashes[slot] == hash && key.equals(keys[slot])) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    /** Returns a found entry's value, or eagerly removes it and returns null if it has expired. */
+    private Object hit(int bucket, int slot, long nowMillis) {
+        if (expirations != null && nowMillis > expirations[slot]) {
+            remove(bucket, slot); // Eagerly remove expired entry upon access
+            if (stats != null) {
+                stats.expirations++;
+            }
+            return null;
+        }
+        moveToTail(slot);
+        return values[slot];
+    }
+
+    /** Spreads String hash codes, whose low bits alone cluster badly, over the table. */
+    static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    int home(int slot) {
+        return hashes[slot] & (table.length - 1);
+    }
+
+    private void remove(int bucket, int slot) {
+        if (expirations != null) {
+            unlinkWrite(slot);
+        }
+        keys[slot] = null; // Don't keep the key or value reachable
+        values[slot] = null;
+        removeSlot(bucket, slot);
+    }
+
+    private void linkLastWrite(int slot) {
+        writePrev[slot] = writeTail;
+        writeNext[slot] = NONE;
+        if (writeTail == NONE) {
+            writeHead = slot;
+        } else {
+            writeNext[writeTail] = slot;
+        }
+        writeTail = slot;
+    }
+
+    private void unlinkWrite(int slot) {
+        int p = writePrev[slot];
+        int n = writeNext[slot];
+        if (p == NONE) {
+            writeHead = n;
+        } else {
+            writeNext[p] = n;
+        }
+        if (n == NONE) {
+            writeTail = p;
+        } else {
+            writePrev[n] = p;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.locallru;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the {@link LocalLruCache#getOrLoadAsync(String)} batches that their threads never send: those
+ * whose {@link LocalLruCache.Options#batchWindow(int, long, TimeUnit) maxDelay} ran out while the thread
+ * made no further call, and those of threads that died. Runs as a {@link HandlerTask} on the shared
+ * maintenance thread, which only takes the batches; they are loaded on the handler's
+ * {@link LocalLruCache.Options#batchExecutor(java.util.concurrent.Executor) batch executor}.
+ */
+final class BatchDispatcher {
+    /** How often dead threads' batches are looked for when the window has no time limit. */
+    static final long IDLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Keeps a very short window from turning the maintenance thread into a busy loop. */
+    static final long MIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private BatchDispatcher() {
+    }
+
+    /**
+     * Schedules {@link LocalLruCache#dispatchOverdueLoads()} for a handler at a fixed delay.
+     */
+    static void schedule(LocalLruCache handler, long intervalNanos) {
+        HandlerTask.schedule(handler, LocalLruCache::dispatchOverdueLoads, "Batch dispatch", intervalNanos,
+                TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.locallru;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads the values for several missing keys in one request, for
+ * {@link LocalLruCache#getAll(java.util.Collection, BatchLoader)} and
+ * {@link LocalLruCache#getOrLoadAsync(String)}.
+ * <pre>{@code
+ * Map<String, User> users = cache.getAll(userIds, missing -> userRepository.findAllById(missing));
+ * }</pre>
+ * @param <V> Value type.
+ */
+@FunctionalInterface
+public interface BatchLoader<V> {
+
+    /**
+     * Called on the thread that missed. Exceptions propagate to the caller (or fail the pending futures)
+     * and nothing is cached.
+     * @param keys Keys that were not found; never empty, and not modifiable.
+     * @return Values for the keys that could be loaded. Keys that are absent or mapped to null are not
+     *         cached and are reported as missing.
+     */
+    Map<String, ? extends V> loadAll(Set<String> keys);
+}
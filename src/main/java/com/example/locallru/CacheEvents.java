@@ -0,0 +1,282 @@
+package com.example.locallru;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events emitted by {@link LocalLruCache}, so cache activity shows up on the same
+ * timeline as GC pauses and request latency:
+ * <ul>
+ *     <li>{@code com.example.locallru.SlowLoad}: a loader call slower than its threshold (10 ms by default).
+ *     <li>{@code com.example.locallru.EvictionBatch}: up to {@value #EVICTION_BATCH_SIZE} evictions by one
+ *         thread, committed once the batch is full, within about a second after it started, and when a
+ *         recording starts or ends, so no batch is left out of a recording or spans two.
+ *     <li>{@code com.example.locallru.ExpirySweep}: a background expiry sweep.
+ * </ul>
+ * Each carries the handler's name; JFR adds the thread, start time and duration. Thresholds can be changed
+ * like those of built-in events, in a {@code .jfc} settings file or with
+ * {@code recording.enable("com.example.locallru.SlowLoad").withThreshold(Duration.ofMillis(50))}.
+ * <p>
+ * While no recording is running, the cache checks one volatile flag per load, eviction or sweep and
+ * creates no event objects.
+ */
+final class CacheEvents {
+    static final int EVICTION_BATCH_SIZE = 64;
+    private static final long EVICTION_BATCH_NANOS = 1_000_000_000L;
+
+    /** True while at least one recording is running; kept up to date by a recorder listener. */
+    private static volatile boolean recording;
+
+    /** Tallies with an uncommitted batch, so batches whose thread stopped evicting still get committed. */
+    private static final Set<EvictionTally> OPEN_TALLIES = ConcurrentHashMap.newKeySet();
+
+    static {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                update(recorder);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording changed) {
+                update(FlightRecorder.getFlightRecorder());
+                // A batch begun before the change must not be committed to a recording started after it.
+                flushEvictions();
+            }
+        });
+        FlightRecorder.addPeriodicEvent(EvictionFlush.class, CacheEvents::flushEvictions);
+        FlightRecorder.addPeriodicEvent(EvictionFlushAtChunkEnd.class, CacheEvents::flushEvictions);
+    }
+
+    private CacheEvents() {
+    }
+
+    private static void update(FlightRecorder recorder) {
+        boolean running = false;
+        for (Recording r : recorder.getRecordings()) {
+            running |= r.getState() == RecordingState.RUNNING;
+        }
+        recording = running;
+    }
+
+    /**
+     * @return True while a recording is running.
+     */
+    static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @return A started load event, or null if no recording is running.
+     */
+    static SlowLoad beginLoad() {
+        if (!recording) {
+            return null;
+        }
+        SlowLoad event = new SlowLoad();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits a load event if it took longer than its threshold.
+     * @param event From {@link #beginLoad()}; may be null.
+     * @param key Loaded key, or null for a batch.
+     * @param keyCount Number of keys loaded.
+     * @param success Whether the loader returned normally with a value.
+     */
+    static void endLoad(SlowLoad event, String handler, String key, int keyCount, boolean success) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.handler = handler;
+            event.key = key;
+            event.keyCount = keyCount;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds evictions to the calling thread's current batch for a handler, committing it once full or old.
+     * Only called while {@link #isRecording()}.
+     * @param tally The calling thread's batch for the handler.
+     */
+    static void evicted(EvictionTally tally, int count) {
+        synchronized (tally) {
+            if (tally.event == null) {
+                tally.event = new EvictionBatch();
+                tally.event.begin();
+                tally.startNanos = System.nanoTime();
+                tally.count = 0;
+                OPEN_TALLIES.add(tally);
+            }
+            tally.count += count;
+            if (tally.count >= EVICTION_BATCH_SIZE || System.nanoTime() - tally.startNanos >= EVICTION_BATCH_NANOS) {
+                tally.commit();
+            }
+        }
+    }
+
+    /**
+     * Commits every thread's open eviction batch. Run by Flight Recorder every second, at the end of each
+     * chunk (so also as a recording stops), and when a recording starts or stops.
+     */
+    private static void flushEvictions() {
+        for (EvictionTally tally : OPEN_TALLIES) {
+            synchronized (tally) {
+                if (tally.event != null) {
+                    tally.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A started sweep event, or null if no recording is running.
+     */
+    static ExpirySweep beginSweep() {
+        if (!recording) {
+            return null;
+        }
+        ExpirySweep event = new ExpirySweep();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits a sweep event if it took longer than its threshold.
+     * @param event From {@link #beginSweep()}; may be null.
+     */
+    static void endSweep(ExpirySweep event, String handler, int storesSwept, int storesSkipped, long entriesRemoved) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.handler = handler;
+            event.storesSwept = storesSwept;
+            event.storesSkipped = storesSkipped;
+            event.entriesRemoved = entriesRemoved;
+            event.commit();
+        }
+    }
+
+    /**
+     * One thread's pending {@link EvictionBatch} for one handler. Guarded by itself: the owning thread adds
+     * to it, and {@link #flushEvictions()} may commit it from a Flight Recorder thread.
+     */
+    static final class EvictionTally {
+        private final String handler;
+        private EvictionBatch event; // Null while no batch is open
+        private long startNanos;
+        private int count;
+
+        EvictionTally(String handler) {
+            this.handler = handler;
+        }
+
+        /** Commits the open batch; the caller holds the lock. */
+        private void commit() {
+            EvictionBatch batch = event;
+            event = null;
+            OPEN_TALLIES.remove(this);
+            batch.end();
+            if (batch.shouldCommit()) {
+                batch.handler = handler;
+                batch.evictedCount = count;
+                batch.commit();
+            }
+        }
+    }
+
+    @Name("com.example.locallru.SlowLoad")
+    @Label("Slow Cache Load")
+    @Category("LocalLruCache")
+    @Description("A cache loader call that took longer than the threshold")
+    @Threshold("10 ms")
+    static final class SlowLoad extends Event {
+        @Label("Handler")
+        String handler;
+
+        @Label("Key")
+        @Description("Loaded key; null for a batch load")
+        String key;
+
+        @Label("Key Count")
+        int keyCount;
+
+        @Label("Success")
+        @Description("False if the loader threw or returned null")
+        boolean success;
+    }
+
+    @Name("com.example.locallru.EvictionBatch")
+    @Label("Cache Eviction Batch")
+    @Category("LocalLruCache")
+    @Description("Entries evicted for size by one thread, from the first eviction in the batch to the last")
+    @Threshold("0 ms")
+    @StackTrace(false)
+    static final class EvictionBatch extends Event {
+        @Label("Handler")
+        String handler;
+
+        @Label("Evicted Count")
+        int evictedCount;
+    }
+
+    /** Never recorded: its periodic hook commits eviction batches whose thread has stopped evicting. */
+    @Name("com.example.locallru.EvictionFlush")
+    @Label("Cache Eviction Flush")
+    @Category("LocalLruCache")
+    @Description("Internal: commits open eviction batches once a second; never recorded itself")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class EvictionFlush extends Event {
+    }
+
+    /** Never recorded: its hook commits open eviction batches before a chunk, or the recording, ends. */
+    @Name("com.example.locallru.EvictionFlushAtChunkEnd")
+    @Label("Cache Eviction Flush At Chunk End")
+    @Category("LocalLruCache")
+    @Description("Internal: commits open eviction batches at the end of each chunk; never recorded itself")
+    @Period("endChunk")
+    @StackTrace(false)
+    static final class EvictionFlushAtChunkEnd extends Event {
+    }
+
+    @Name("com.example.locallru.ExpirySweep")
+    @Label("Cache Expiry Sweep")
+    @Category("LocalLruCache")
+    @Description("A background sweep of expired entries")
+    @Threshold("0 ms")
+    @StackTrace(false)
+    static final class ExpirySweep extends Event {
+        @Label("Handler")
+        String handler;
+
+        @Label("Stores Swept")
+        int storesSwept;
+
+        @Label("Stores Skipped")
+        @Description("Thread-local stores whose owner was using them")
+        int storesSkipped;
+
+        @Label("Entries Removed")
+        long entriesRemoved;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.locallru;
+
+import java.util.Objects;
+
+/**
+ * A reusable, pre-hashed key for {@link LocalLruCache#addItem(CacheKey, Object)} and
+ * {@link LocalLruCache#getItem(CacheKey)}.
+ * <p>
+ * Create handles once, outside hot loops, instead of concatenating a key (e.g. {@code "prefs_" + userId})
+ * on every call:
+ * <pre>{@code
+ * CacheKey prefsKey = CacheKey.of("prefs_", userId); // built and hashed once
+ * for (Request request : requests) {
+ *     Prefs prefs = cache.getItem(prefsKey);
+ * }
+ * }</pre>
+ * A handle wraps a single key {@code String} and carries the key's hash as {@link ArrayLruStore}'s table
+ * spreads it. Beyond not rebuilding the key, it only speeds up handlers with
+ * {@link LocalLruCache.Options#arrayBackedStorage()}: their stores probe straight from the handle, and
+ * store entries added through it under its {@code String} instance, so later lookups with the handle
+ * match them by reference, without comparing characters. Every other store looks a handle up by its
+ * {@code String}, exactly as the {@code String} overloads do ({@code String} already caches its hash code).
+ * Handles and plain {@code String} keys with the same text refer to the same entry.
+ */
+public final class CacheKey {
+    final String key;
+
+    /** The key's hash as spread by {@link ArrayLruStore}, computed once. */
+    final int tableHash;
+
+    private CacheKey(String key) {
+        this.key = key;
+        this.tableHash = ArrayLruStore.spread(key.hashCode());
+    }
+
+    /**
+     * @param key Key text.
+     * @return A handle for {@code key}.
+     */
+    public static CacheKey of(String key) {
+        return new CacheKey(Objects.requireNonNull(key, "key"));
+    }
+
+    /**
+     * Builds the key {@code prefix + id} once.
+     * @param prefix Key prefix, such as {@code "prefs_"}.
+     * @param id Numeric part of the key.
+     * @return A handle for the concatenated key.
+     */
+    public static CacheKey of(String prefix, long id) {
+        return new CacheKey(Objects.requireNonNull(prefix, "prefix") + id);
+    }
+
+    /**
+     * @return The key text, as used by the {@code String} overloads.
+     */
+    @Override
+    public String toString() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return key.equals(((CacheKey) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.locallru;
+
+/**
+ * Computes the value for a key that is missing from the cache, for
+ * {@link LocalLruCache#getOrLoad(String, CacheLoader)}.
+ * <p>
+ * A handler can also be given a default loader with {@link LocalLruCache.Options#loader(CacheLoader)}:
+ * <pre>{@code
+ * LocalLruCache users = LocalLruCache.initialize(1_000, 60, new LocalLruCache.Options()
+ *         .loader(userId -> userRepository.find(userId)));
+ * User user = users.getOrLoad("42");
+ * }</pre>
+ * @param <V> Value type.
+ */
+@FunctionalInterface
+public interface CacheLoader<V> {
+
+    /**
+     * Called on the thread that missed. Exceptions propagate to the caller and nothing is cached.
+     * @param key Key that was not found.
+     * @return The value to cache and return, or null to cache nothing.
+     */
+    V load(String key);
+}
@@ -0,0 +1,141 @@
+package com.example.locallru;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * The {@link LocalLruCacheMXBean} of one handler, and its registration with the platform MBean server.
+ * Each attribute read walks the handler's live stores; nothing is computed on the cache's own paths.
+ */
+final class CacheManagement implements LocalLruCacheMXBean {
+    private final LocalLruCache handler;
+
+    private CacheManagement(LocalLruCache handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Registers an MXBean for {@code handler}.
+     * @return The name it was registered under.
+     * @throws IllegalStateException if a handler with the same name is already registered.
+     */
+    static ObjectName register(LocalLruCache handler) {
+        try {
+            ObjectName name = objectName(handler.getName());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(new CacheManagement(handler), LocalLruCacheMXBean.class, true), name);
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register MBean for cache: " + handler.getName(), e);
+        }
+    }
+
+    /**
+     * Unregisters an MXBean, if it is still registered.
+     */
+    static void unregister(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            // Already unregistered; nothing to do.
+        }
+    }
+
+    static ObjectName objectName(String handlerName) throws JMException {
+        return new ObjectName("com.example.locallru:type=LocalLruCache,name=" + ObjectName.quote(handlerName));
+    }
+
+    @Override
+    public String getName() {
+        return handler.getName();
+    }
+
+    @Override
+    public String getMode() {
+        return handler.getMode().name();
+    }
+
+    @Override
+    public String getPolicy() {
+        return handler.getPolicy().name();
+    }
+
+    @Override
+    public int getCapacity() {
+        return handler.capacity();
+    }
+
+    @Override
+    public int getLiveStoreCount() {
+        return handler.liveStoreCount();
+    }
+
+    @Override
+    public long getTotalEntryCount() {
+        return handler.totalEntryCount();
+    }
+
+    @Override
+    public int getMaxEntryCount() {
+        return handler.maxStoreEntryCount();
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes() {
+        return handler.estimatedMemoryBytes();
+    }
+
+    @Override
+    public long getHitCount() {
+        return handler.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return handler.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return handler.stats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return handler.stats().evictionCount();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return handler.stats().expirationCount();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return handler.stats().loadSuccessCount();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return handler.stats().loadFailureCount();
+    }
+
+    @Override
+    public double getAverageLoadPenaltyNanos() {
+        return handler.stats().averageLoadPenaltyNanos();
+    }
+
+    @Override
+    public void clear() {
+        handler.clear();
+    }
+
+    @Override
+    public void resize(int capacity) {
+        handler.resize(capacity);
+    }
+}
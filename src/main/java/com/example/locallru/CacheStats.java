@@ -0,0 +1,90 @@
+package com.example.locallru;
+
+/**
+ * An immutable snapshot of a {@link LocalLruCache} handler's statistics, summed over all of its threads.
+ * Returned by {@link LocalLruCache#stats()} when the handler was created with
+ * {@link LocalLruCache.Options#recordStats()}.
+ * <pre>{@code
+ * CacheStats stats = cache.stats();
+ * log.info("hit rate {}, avg load {} ms", stats.hitRate(), stats.averageLoadPenaltyNanos() / 1e6);
+ * }</pre>
+ */
+public final class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTimeNanos;
+
+    CacheStats(long hitCount, long missCount, long evictionCount, long expirationCount,
+               long loadSuccessCount, long loadFailureCount, long totalLoadTimeNanos) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTimeNanos = totalLoadTimeNanos;
+    }
+
+    /** @return Lookups that found a live value. */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /** @return Lookups that found nothing, or an expired value. */
+    public long missCount() {
+        return missCount;
+    }
+
+    /** @return Hits plus misses. */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /** @return Hits divided by requests, or 1.0 if there were no requests. */
+    public double hitRate() {
+        long requests = requestCount();
+        return (requests == 0) ? 1.0 : (double) hitCount / requests;
+    }
+
+    /** @return Entries evicted to stay within a capacity or weight bound. */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /** @return Entries removed because their TTL passed. */
+    public long expirationCount() {
+        return expirationCount;
+    }
+
+    /** @return Loader calls that returned a value. */
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /** @return Loader calls that returned null or threw. */
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /** @return Total time spent in loaders, in nanoseconds. */
+    public long totalLoadTimeNanos() {
+        return totalLoadTimeNanos;
+    }
+
+    /** @return Average time per loader call in nanoseconds, or 0 if nothing was loaded. */
+    public double averageLoadPenaltyNanos() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return (loads == 0) ? 0.0 : (double) totalLoadTimeNanos / loads;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                + ", expirationCount=" + expirationCount + ", loadSuccessCount=" + loadSuccessCount
+                + ", loadFailureCount=" + loadFailureCount + ", totalLoadTimeNanos=" + totalLoadTimeNanos + "}";
+    }
+}
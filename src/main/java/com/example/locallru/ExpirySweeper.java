@@ -0,0 +1,20 @@
+package com.example.locallru;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the periodic expiry sweeps of all handlers created with
+ * {@link LocalLruCache.Options#expirySweepInterval(long, TimeUnit)}, as {@link HandlerTask}s on the shared
+ * maintenance thread.
+ */
+final class ExpirySweeper {
+    private ExpirySweeper() {
+    }
+
+    /**
+     * Schedules {@link LocalLruCache#sweepExpired()} for a handler at a fixed delay.
+     */
+    static void schedule(LocalLruCache handler, long intervalMillis) {
+        HandlerTask.schedule(handler, LocalLruCache::sweepExpired, "Expiry sweep", intervalMillis, TimeUnit.MILLISECONDS);
+    }
+}
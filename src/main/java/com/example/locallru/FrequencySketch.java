@@ -0,0 +1,125 @@
+package com.example.locallru;
+
+/**
+ * A compact Count-Min sketch estimating how often each key has been seen, with 4-bit counters.
+ * <p>
+ * Sixteen counters are packed into each {@code long}. A key maps to four counters in four different
+ * words (one per hash function) and its estimate is the minimum of them, which bounds the error from
+ * collisions. Counters saturate at 15: admission only needs to know which of two keys is more popular,
+ * not by how much.
+ * <p>
+ * <b>Aging:</b> after a sample of {@code 10 * capacity} increments every counter is halved, so past
+ * popularity fades and keys that were hot an hour ago cannot hold their place forever.
+ * <p>
+ * The table is sized from the owning store's capacity (about 8 bytes per entry) and allocated once;
+ * {@link #increment} and {@link #frequency} never allocate. Not thread-safe: each per-thread store owns
+ * its sketch, and shared segments only touch theirs under the segment lock.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * Creates a sketch for a store of the given capacity.
+     * @param capacity Max entries of the owning store. Must be positive.
+     */
+    FrequencySketch(int capacity) {
+        int length = (capacity <= 8) ? 8 : Integer.highestOneBit(Math.min(capacity, 1 << 30) - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = (capacity > Integer.MAX_VALUE / 10) ? Integer.MAX_VALUE : Math.max(10, 10 * capacity);
+    }
+
+    /**
+     * Returns the estimated number of occurrences of a key, up to 15.
+     * @param key Key to look up; only its {@link Object#hashCode()} is used.
+     */
+    int frequency(Object key) {
+        return frequency(key.hashCode());
+    }
+
+    /**
+     * Returns the estimated number of occurrences of a key hash, up to 15.
+     * @param keyHash Hash of the key, e.g. {@link String#hashCode()}.
+     */
+    int frequency(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records one occurrence of a key, aging all counters when the sample period is reached.
+     * @param key Key to record; only its {@link Object#hashCode()} is used.
+     */
+    void increment(Object key) {
+        increment(key.hashCode());
+    }
+
+    /**
+     * Records one occurrence of a key hash, aging all counters when the sample period is reached.
+     * @param keyHash Hash of the key, e.g. {@link String#hashCode()}.
+     */
+    void increment(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Increments the {@code j}-th 4-bit counter of word {@code i} unless it is saturated.
+     */
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /** Halves every counter, keeping the sample size consistent with the truncated odd counts. */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    /** Word index for the {@code i}-th hash function. */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += (h >>> 32);
+        return ((int) h) & tableMask;
+    }
+
+    /** Applies a supplemental hash to defend against poor {@code hashCode()} distributions. */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
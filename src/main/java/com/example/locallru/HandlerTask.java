@@ -0,0 +1,73 @@
+package com.example.locallru;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A periodic maintenance task of one handler, such as an {@link ExpirySweeper} sweep or a
+ * {@link BatchDispatcher} check. The tasks of all handlers run on one shared daemon thread, so they must
+ * be short: work that runs user code, such as a loader, is handed off to an executor of the handler.
+ * <p>
+ * Handlers are referenced weakly, so scheduling a task does not keep an otherwise unused handler alive;
+ * the task cancels itself once its handler has been collected.
+ */
+final class HandlerTask implements Runnable {
+    private static final System.Logger LOGGER = System.getLogger(HandlerTask.class.getName());
+
+    /** Lazily started, so handlers without periodic tasks never create the thread. */
+    private static final class Holder {
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LocalLruCache-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final WeakReference<LocalLruCache> handler;
+    private final Consumer<LocalLruCache> action;
+    private final String description;
+    private volatile ScheduledFuture<?> future;
+    private long failures; // Only touched by the scheduler thread
+
+    private HandlerTask(LocalLruCache handler, Consumer<LocalLruCache> action, String description) {
+        this.handler = new WeakReference<>(handler);
+        this.action = action;
+        this.description = description;
+    }
+
+    /**
+     * Runs {@code action} for a handler at a fixed delay.
+     * @param action Must not capture the handler, or it would never be collected.
+     * @param description Names the task in failure logs, e.g. "Expiry sweep".
+     */
+    static void schedule(LocalLruCache handler, Consumer<LocalLruCache> action, String description,
+                         long interval, TimeUnit unit) {
+        HandlerTask task = new HandlerTask(handler, action, description);
+        task.future = Holder.SCHEDULER.scheduleWithFixedDelay(task, interval, interval, unit);
+    }
+
+    @Override
+    public void run() {
+        LocalLruCache target = handler.get();
+        if (target == null) {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            return;
+        }
+        try {
+            action.accept(target);
+        } catch (RuntimeException e) {
+            // Keep running on later runs; a failed run only delays the work. Report the first failure, and
+            // later ones only at debug level, so a persistent fault doesn't flood the log.
+            failures++;
+            LOGGER.log((failures == 1) ? System.Logger.Level.WARNING : System.Logger.Level.DEBUG,
+                    () -> description + " failed for cache " + target.getName() + " (failure " + failures + ")", e);
+        }
+    }
+}
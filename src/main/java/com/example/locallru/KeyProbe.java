@@ -0,0 +1,152 @@
+package com.example.locallru;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A lookup key given as characters ({@link CharSequence}) or UTF-8 bytes ({@code byte[]} slice or
+ * {@link ByteBuffer} range) instead of a {@code String}, for {@link LocalLruCache#getItem(CharSequence)}
+ * and its byte overloads.
+ * <p>
+ * {@link #hash()} is the {@code String} hash code of the key's text and {@link #matches(String)} compares
+ * a stored key with it character by character, so {@link ArrayLruStore} probes its table with it in
+ * place. Stores keyed by {@code String} maps look it up by {@link #toString()} instead.
+ * <p>
+ * An ASCII byte is the one UTF-8 code unit of the same {@code char}, so ASCII byte keys are hashed and
+ * compared in place. A byte key with any non-ASCII byte is decoded once, when the probe is set.
+ * <p>
+ * Each thread reuses one probe, so a lookup allocates nothing. A probe is only valid until
+ * {@link #release()}, which drops its reference to the caller's key; it must never be stored.
+ */
+final class KeyProbe {
+    private static final ThreadLocal<KeyProbe> PROBES = ThreadLocal.withInitial(KeyProbe::new);
+
+    // Exactly one of these is non-null while the probe is in use.
+    private CharSequence chars;
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private int hash;
+
+    private KeyProbe() {
+    }
+
+    /**
+     * @return The calling thread's probe, set to {@code key}.
+     */
+    static KeyProbe of(CharSequence key) {
+        return PROBES.get().setChars(key);
+    }
+
+    /**
+     * @return The calling thread's probe, set to the UTF-8 key in {@code key[offset..offset+length)}.
+     */
+    static KeyProbe of(byte[] key, int offset, int length) {
+        KeyProbe probe = PROBES.get();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = key[offset + i];
+            if (b < 0) {
+                return probe.setChars(new String(key, offset, length, StandardCharsets.UTF_8));
+            }
+            hash = 31 * hash + b;
+        }
+        probe.bytes = key;
+        probe.offset = offset;
+        probe.length = length;
+        probe.hash = hash;
+        return probe;
+    }
+
+    /**
+     * @return The calling thread's probe, set to the UTF-8 key between the buffer's position and limit.
+     *         The buffer's position is not changed.
+     */
+    static KeyProbe of(ByteBuffer key) {
+        KeyProbe probe = PROBES.get();
+        int offset = key.position();
+        int length = key.remaining();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = key.get(offset + i);
+            if (b < 0) {
+                return probe.setChars(StandardCharsets.UTF_8.decode(key.duplicate()).toString());
+            }
+            hash = 31 * hash + b;
+        }
+        probe.buffer = key;
+        probe.offset = offset;
+        probe.length = length;
+        probe.hash = hash;
+        return probe;
+    }
+
+    private KeyProbe setChars(CharSequence key) {
+        int length = key.length();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+        this.chars = key;
+        this.length = length;
+        this.hash = hash;
+        return this;
+    }
+
+    /**
+     * Drops the reference to the caller's key, so the probe doesn't keep it reachable.
+     */
+    void release() {
+        chars = null;
+        bytes = null;
+        buffer = null;
+    }
+
+    /**
+     * @return The {@code String} hash code of the key's text.
+     */
+    int hash() {
+        return hash;
+    }
+
+    /**
+     * @return True if {@code key} has the key's text.
+     */
+    boolean matches(String key) {
+        if (key.length() != length) {
+            return false;
+        }
+        if (chars != null) {
+            return key.contentEquals(chars);
+        }
+        if (bytes != null) {
+            for (int i = 0; i < length; i++) {
+                if (key.charAt(i) != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The key as a new {@code String}, for stores that can only be searched by one.
+     */
+    @Override
+    public String toString() {
+        if (chars != null) {
+            return chars.toString();
+        }
+        if (bytes != null) {
+            return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+        }
+        return StandardCharsets.US_ASCII.decode(buffer.duplicate()).toString();
+    }
+}
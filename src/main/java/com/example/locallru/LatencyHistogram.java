@@ -0,0 +1,58 @@
+package com.example.locallru;
+
+/**
+ * A fixed-size, log-bucketed histogram of latencies in nanoseconds, recorded by one thread.
+ * <p>
+ * Values below 16 ns get a bucket each; above that, every power of two is split into 8 linear
+ * sub-buckets, so a recorded value is known to within 12.5%. The whole range of {@code long} fits in
+ * {@value #BUCKETS} counters, allocated once, so recording is an index computation and an increment.
+ * Like {@link StatsCounter}, it has a single writer and is read racily when merged.
+ */
+final class LatencyHistogram {
+    private static final int LINEAR_LIMIT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 4; // log2(LINEAR_LIMIT)
+
+    /** Linear buckets, then 8 sub-buckets for each exponent from 4 to 62. */
+    static final int BUCKETS = LINEAR_LIMIT + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+
+    void record(long nanos) {
+        counts[bucketOf(Math.max(0, nanos))]++;
+    }
+
+    /** Adds this histogram's counts to {@code total}. */
+    void addTo(LatencyHistogram total) {
+        for (int i = 0; i < BUCKETS; i++) {
+            total.counts[i] += counts[i];
+        }
+    }
+
+    LatencySnapshot snapshot() {
+        return new LatencySnapshot(counts.clone());
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < LINEAR_LIMIT) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The largest value that falls into {@code bucket}.
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + FIRST_EXPONENT;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long next = (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+        return (next < 0) ? Long.MAX_VALUE : next - 1;
+    }
+}
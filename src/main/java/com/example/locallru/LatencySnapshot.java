@@ -0,0 +1,82 @@
+package com.example.locallru;
+
+/**
+ * An immutable snapshot of one latency histogram of a {@link LocalLruCache} handler, merged over all of
+ * its threads. Returned by {@link LocalLruCache#loadLatency()}, {@link LocalLruCache#getLatency()} and
+ * {@link LocalLruCache#addLatency()} when the handler was created with
+ * {@link LocalLruCache.Options#recordLatencies(boolean)}.
+ * <pre>{@code
+ * LatencySnapshot loads = cache.loadLatency();
+ * log.info("loads: {} p50={}ns p99={}ns p999={}ns", loads.count(), loads.p50(), loads.p99(), loads.p999());
+ * }</pre>
+ * Values are bucketed logarithmically, so a reported percentile is the upper bound of its bucket,
+ * at most 12.5% above the true value.
+ */
+public final class LatencySnapshot {
+    private final long[] counts;
+    private final long count;
+
+    LatencySnapshot(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        this.count = total;
+    }
+
+    /** @return Number of recorded latencies. */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @param percentile Between 0 and 100, e.g. 99.9.
+     * @return The latency in nanoseconds that {@code percentile} percent of recorded values do not exceed,
+     *         or 0 if nothing was recorded.
+     * @throws IllegalArgumentException if percentile is out of range.
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return LatencyHistogram.highestValueIn(bucket);
+            }
+        }
+        return LatencyHistogram.highestValueIn(counts.length - 1);
+    }
+
+    /** @return Median latency in nanoseconds. */
+    public long p50() {
+        return percentile(50);
+    }
+
+    /** @return 90th percentile latency in nanoseconds. */
+    public long p90() {
+        return percentile(90);
+    }
+
+    /** @return 99th percentile latency in nanoseconds. */
+    public long p99() {
+        return percentile(99);
+    }
+
+    /** @return 99.9th percentile latency in nanoseconds. */
+    public long p999() {
+        return percentile(99.9);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{count=" + count + ", p50=" + p50() + "ns, p90=" + p90() + "ns, p99=" + p99()
+                + "ns, p999=" + p999() + "ns}";
+    }
+}
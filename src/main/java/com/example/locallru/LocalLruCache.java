@@ -1,10 +1,26 @@
 package com.example.locallru;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.management.ObjectName;
 import java.util.Arrays; // For main method tests
-import java.nio.charset.StandardCharsets; // For main method tests
 
 /**
  * A thread-safe, lock-free LRU (Least Recently Used) cache using {@link ThreadLocal} storage.
@@ -13,9 +29,21 @@ import java.nio.charset.StandardCharsets; // For main method tests
  * <ul>
  *     <li><b>Thread-Local:</b> Caches are per-thread; data isn't shared.
  *     <li><b>LRU Eviction:</b> Removes the least recently used item when a thread's cache is full.
- *     <li><b>TTL Support:</b> Entries can expire based on a Time To Live.
+ *     <li><b>TTL Support:</b> Entries can expire based on a Time To Live, measured by a pluggable {@link Ticker}.
+ *         Expired entries are reclaimed by a per-store {@link TimerWheel} during normal traffic, and
+ *         optionally by a background sweeper that also reaches idle threads' caches.
  *     <li><b>Configurable:</b> Use {@link #initialize(int, long)} to get a cache handler with specific
  *         capacity and TTL. Different handlers can have different settings.
+ *     <li><b>Shared Mode:</b> {@link #initialize(int, long, Options)} with {@link Mode#SHARED} backs the
+ *         handler with one process-wide, lock-striped LRU instead of a cache per thread. Reads in this
+ *         mode never take a lock.
+ *     <li><b>Weight Bound:</b> Stores can be bounded by the total {@link Weigher weight} of their
+ *         entries (e.g. payload bytes) in addition to their entry count.
+ *     <li><b>Off-Heap Values:</b> {@code byte[]} values can be kept in native memory, out of the GC's way.
+ *     <li><b>Overflow Tier:</b> Entries evicted for size can spill to a memory-mapped file and be
+ *         promoted back on their next access.
+ *     <li><b>Eviction Policies:</b> Plain LRU by default, or {@link Policy#WINDOW_TINY_LFU}, which keeps
+ *         frequently used entries from being flushed by bursts of one-hit wonders.
  * </ul>
  * Suitable for high-throughput, read-heavy scenarios where per-thread caches are acceptable
  * (e.g., web services caching per-request data).
@@ -28,186 +56,2057 @@ public class LocalLruCache {
     private static volatile int globalDefaultCapacity = 100;
     private static volatile long globalDefaultTtlMillis = 0; // 0 or less means entries don't expire by TTL.
 
-    /** Capacity for this specific cache handler instance. */
-    private final int instanceCapacity;
+    /** Numbers the names of handlers created without {@link Options#name(String)}. */
+    private static final AtomicInteger handlerSequence = new AtomicInteger();
+
+    /** Name of this handler, e.g. for its MBean. */
+    private final String name;
+
+    /** Capacity for this specific cache handler instance; changed by its MBean's {@code resize}. */
+    private volatile int instanceCapacity;
 
     /** TTL in milliseconds for this specific cache handler instance. 0 or less means no TTL. */
     private final long instanceTtlMillis;
 
+    /** Storage engine for this specific cache handler instance. */
+    private final Mode instanceMode;
+
+    /** Eviction policy for this specific cache handler instance. */
+    private final Policy instancePolicy;
+
+    /** Time source for this specific cache handler instance's TTL checks. */
+    private final Ticker ticker;
+
+    /** Max total weight per store for this handler instance; {@link Long#MAX_VALUE} if unbounded. */
+    private final long instanceMaximumWeight;
+
+    /**
+     * Heaviest entry a store accepts: {@link #instanceMaximumWeight}, or in {@link Mode#SHARED} one
+     * segment's share of it. Heavier items are not cached.
+     */
+    private final long maximumEntryWeight;
+
+    /** Weighs entries toward {@link #instanceMaximumWeight}; null when only the entry count is bounded. */
+    private final Weigher weigher;
+
+    /** Native memory for {@code byte[]} values; null unless off-heap values are enabled. */
+    private final SlabAllocator offHeap;
+
+    /** How off-heap values are returned by {@link #getItem(String)}. */
+    private final OffHeapAccess offHeapAccess;
+
+    /** Whether each thread's store is a preallocated {@link ArrayLruStore}, read and written without allocating. */
+    private final boolean arrayBacked;
+
+    /** Default loader for {@link #getOrLoad(String)}; null if none was configured. */
+    private final CacheLoader<?> defaultLoader;
+
+    /** Default loader for {@link #getOrLoadAsync(String)}; null if none was configured. */
+    private final BatchLoader<?> batchLoader;
+
+    /** Misses queued by {@link #getOrLoadAsync(String)} are loaded once this many are pending. */
+    private final int maxBatchSize;
+
+    /** Queued misses are also loaded once the oldest has waited this long; 0 for no limit. */
+    private final long maxBatchDelayNanos;
+
+    /** Each thread's queued misses; null without a batch loader. */
+    private final ThreadLocal<PendingLoads> pendingLoads;
+
+    /** Every thread's queued misses, for the {@link BatchDispatcher}; null unless batches can hold several keys. */
+    private final ConcurrentLinkedQueue<PendingLoads> batchQueues;
+
+    /** Loads the batches the {@link BatchDispatcher} sends. */
+    private final Executor batchExecutor;
+
+    /** Every thread's stats counters; null unless the handler records stats. */
+    private final ConcurrentLinkedQueue<StatsCounter> threadStats;
+
+    /** Sum of the counters of threads that have terminated, folded in by {@link #stats()}. Guarded by itself. */
+    private final StatsCounter retiredStats;
+
+    /** Whether each thread's counters keep a histogram of load times. */
+    private final boolean recordLoadLatency;
+
+    /** Whether each thread's counters keep histograms of {@code getItem} and {@code addItem} times. */
+    private final boolean recordOperationLatency;
+
+    /** Each thread's hit/miss/load counters in {@link Mode#SHARED}; null in thread-local mode or without stats. */
+    private final ThreadLocal<StatsCounter> sharedModeStats;
+
+    /** The {@link #batchExecutor} threads' load counters in thread-local mode; null unless it loads batches with stats. */
+    private final ThreadLocal<StatsCounter> batchExecutorStats;
+
+    /** Shares in-flight loads between threads; null unless single-flight loading is enabled. */
+    private final SingleFlight singleFlight;
+
+    /** Background reloads of entries past their refresh point; null unless refresh-ahead is enabled. */
+    private final RefreshAhead refreshAhead;
+
+    /** Second tier for entries evicted for size; null unless an overflow file is configured. */
+    private final MappedOverflowTier overflowTier;
+
+    /** Passed to every store of this handler; null when no removal needs handling. */
+    private final RemovalListener removalListener;
+
+    /** Each thread's pending {@link CacheEvents.EvictionBatch}; only touched while a JFR recording is running. */
+    private final ThreadLocal<CacheEvents.EvictionTally> evictionTally = ThreadLocal.withInitial(this::newEvictionTally);
+
+    /** Name this handler's MBean is registered under; null if it has none or it was unregistered. */
+    private volatile ObjectName mbeanName;
+
+    /**
+     * Storage engine behind a handler's {@code addItem}/{@code getItem} API.
+     */
+    public enum Mode {
+        /** Each thread gets its own private cache (the default). No locks, but hot keys are duplicated per thread. */
+        THREAD_LOCAL,
+        /**
+         * One cache shared by all threads, split into lock-striped segments.
+         * Reads are lock-free; writes lock one segment. Trades a little contention for a single
+         * copy of each key and a shared hit ratio.
+         */
+        SHARED
+    }
+
+    /**
+     * Decides which entry is evicted when a store is full.
+     */
+    public enum Policy {
+        /** Evicts the least recently used entry (the default). */
+        LRU,
+        /**
+         * W-TinyLFU: a small LRU admission window in front of a segmented main region, guarded by a
+         * frequency-based admission filter. Usually lifts the hit ratio on skewed (e.g. Zipf-like)
+         * workloads at the same capacity.
+         */
+        WINDOW_TINY_LFU
+    }
+
+    /**
+     * How {@link #getItem(String)} returns {@code byte[]} values stored off-heap.
+     */
+    public enum OffHeapAccess {
+        /** Returns a fresh {@code byte[]} copy of the value (the safe default). */
+        COPY,
+        /**
+         * Returns a read-only {@link java.nio.ByteBuffer} over the off-heap bytes, without copying.
+         * The view must not be used after the entry may have left the cache (evicted, expired,
+         * overwritten or removed), since its memory is then reused for other values.
+         */
+        READ_ONLY_VIEW
+    }
+
+    /**
+     * Optional settings for {@link #initialize(int, long, Options)}.
+     * Setters return {@code this} so calls can be chained:
+     * <pre>{@code
+     * LocalLruCache shared = LocalLruCache.initialize(10_000, 60, new LocalLruCache.Options().mode(Mode.SHARED));
+     * }</pre>
+     */
+    public static final class Options {
+        private Mode mode = Mode.THREAD_LOCAL;
+        private Policy policy = Policy.LRU;
+        private Ticker ticker = Ticker.system();
+        private long expirySweepIntervalMillis = 0;
+        private long maximumWeight = Long.MAX_VALUE;
+        private Weigher weigher;
+        private OffHeapAccess offHeapAccess;
+        private Path overflowFile;
+        private long overflowSizeBytes;
+        private boolean arrayBacked;
+        private CacheLoader<?> loader;
+        private boolean singleFlight;
+        private long refreshAfterMillis;
+        private Executor refreshExecutor = ForkJoinPool.commonPool();
+        private BatchLoader<?> batchLoader;
+        private int maxBatchSize = 1;
+        private long maxBatchDelayNanos;
+        private Executor batchExecutor = ForkJoinPool.commonPool();
+        private boolean recordStats;
+        private boolean recordLoadLatency;
+        private boolean recordOperationLatency;
+        private String name;
+        private boolean registerMBean;
+
+        /**
+         * Selects the storage engine.
+         * @param mode {@link Mode#THREAD_LOCAL} (default) or {@link Mode#SHARED}.
+         * @return These options.
+         */
+        public Options mode(Mode mode) {
+            this.mode = Objects.requireNonNull(mode, "mode");
+            return this;
+        }
+
+        /**
+         * Selects the eviction policy, in either mode.
+         * @param policy {@link Policy#LRU} (default) or {@link Policy#WINDOW_TINY_LFU}.
+         * @return These options.
+         */
+        public Options policy(Policy policy) {
+            this.policy = Objects.requireNonNull(policy, "policy");
+            return this;
+        }
+
+        /**
+         * Sets the time source for TTL checks. Defaults to {@link Ticker#system()}; use
+         * {@link Ticker#cached(long, java.util.concurrent.TimeUnit)} to take the system clock off the
+         * hot path, or a custom ticker to control time in tests.
+         * @param ticker Time source in milliseconds.
+         * @return These options.
+         */
+        public Options ticker(Ticker ticker) {
+            this.ticker = Objects.requireNonNull(ticker, "ticker");
+            return this;
+        }
+
+        /**
+         * Enables a background sweeper that periodically reclaims expired entries from every thread's
+         * store, including those of idle threads that would otherwise keep them forever. Only useful
+         * with a TTL; disabled by default.
+         * <p>
+         * The sweeper never blocks an owner thread that is using its store; such a store is skipped,
+         * since its owner reclaims expired entries itself on access.
+         * @param interval Time between sweeps (0 or less disables the sweeper).
+         * @param unit Unit of {@code interval}.
+         * @return These options.
+         */
+        public Options expirySweepInterval(long interval, TimeUnit unit) {
+            this.expirySweepIntervalMillis = (interval > 0) ? Math.max(1, unit.toMillis(interval)) : 0;
+            return this;
+        }
+
+        /**
+         * Bounds each store by the total weight of its entries, as computed by the {@link #weigher(Weigher)}
+         * (by default {@link Weigher#builtIn(Weigher)}, counting other value types as 1). The entry-count
+         * capacity still applies. Items heavier than the bound are not cached.
+         * <p>
+         * The bound is per thread in {@link Mode#THREAD_LOCAL}, and in total in {@link Mode#SHARED},
+         * where it is split evenly across the store's segments; there, items heavier than one segment's
+         * share are not cached.
+         * @param maximumWeight Max total weight (must be positive).
+         * @return These options.
+         * @throws IllegalArgumentException if maximumWeight is not positive.
+         */
+        public Options maximumWeight(long maximumWeight) {
+            if (maximumWeight <= 0) {
+                throw new IllegalArgumentException("Maximum weight must be positive.");
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * Sets how entries are weighed toward {@link #maximumWeight(long)}.
+         * @param weigher Computes an entry's weight when it is added.
+         * @return These options.
+         */
+        public Options weigher(Weigher weigher) {
+            this.weigher = Objects.requireNonNull(weigher, "weigher");
+            return this;
+        }
+
+        /**
+         * Stores {@code byte[]} values in native memory (slab-allocated direct buffers) instead of on the
+         * heap, shrinking old-gen and GC pauses for large binary caches. Memory is freed explicitly when an
+         * entry is evicted, expires, is overwritten or removed. Other value types stay on-heap.
+         * <p>
+         * Weights and sizes are computed from the original {@code byte[]}.
+         * @param access Whether {@code getItem} returns a {@code byte[]} copy or a read-only view.
+         * @return These options.
+         */
+        public Options offHeapBinaryValues(OffHeapAccess access) {
+            this.offHeapAccess = Objects.requireNonNull(access, "access");
+            return this;
+        }
+
+        /**
+         * Spills entries evicted for capacity or weight into a memory-mapped file instead of dropping them.
+         * A {@code getItem} that misses in memory then looks the key up in the file and, on a hit, promotes
+         * the entry back into the calling thread's (or the shared) store with its remaining TTL.
+         * <p>
+         * The file is one tier for the whole handler, so in {@link Mode#THREAD_LOCAL} an entry evicted by one
+         * thread can be promoted by another. It is scratch space, truncated when the handler is created;
+         * once full, the oldest spilled entries are overwritten. Only {@code byte[]} and {@code String}
+         * values are spilled; other values are dropped on eviction as without a tier.
+         * In {@link Mode#SHARED}, evicted entries are written once the segment's lock is released.
+         * @param file File to map; created if missing.
+         * @param sizeBytes Size of the mapping (positive, at most {@link Integer#MAX_VALUE}).
+         * @return These options.
+         * @throws IllegalArgumentException if sizeBytes is out of range.
+         */
+        public Options overflowTier(Path file, long sizeBytes) {
+            if (sizeBytes <= 0 || sizeBytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Overflow tier size must be between 1 and " + Integer.MAX_VALUE + " bytes.");
+            }
+            this.overflowFile = Objects.requireNonNull(file, "file");
+            this.overflowSizeBytes = sizeBytes;
+            return this;
+        }
+
+        /**
+         * Backs each thread's cache with parallel arrays allocated once for the full capacity, instead of a
+         * {@link LinkedHashMap} of {@code CacheEntry} objects. Overwrites and evictions recycle slots in place,
+         * so steady-state {@code addItem}/{@code getItem} calls allocate nothing and cache churn no longer
+         * adds to young-GC pressure. The trade-off is that every thread pays for the full capacity up front.
+         * <p>
+         * Only available for {@link Mode#THREAD_LOCAL} with {@link Policy#LRU}, and without a
+         * {@link #maximumWeight(long) weight bound}, off-heap values or an overflow tier.
+         * @return These options.
+         */
+        public Options arrayBackedStorage() {
+            this.arrayBacked = true;
+            return this;
+        }
+
+        /**
+         * Sets the loader {@link #getOrLoad(String)} uses to compute missing values.
+         * @param loader Default loader for this handler.
+         * @return These options.
+         */
+        public Options loader(CacheLoader<?> loader) {
+            this.loader = Objects.requireNonNull(loader, "loader");
+            return this;
+        }
+
+        /**
+         * Makes concurrent {@code getOrLoad} misses for the same key, from any threads using this handler,
+         * share one load: the first thread runs the loader and the others wait for its result, then each
+         * caches it in its own store. Stops a hot key that expires in every thread's cache at once from
+         * sending one identical backend request per thread. Disabled by default.
+         * <p>
+         * A loader failure is rethrown to every thread that waited for it.
+         * @return These options.
+         */
+        public Options singleFlightLoading() {
+            this.singleFlight = true;
+            return this;
+        }
+
+        /**
+         * Reloads entries in the background once they are older than {@code duration}, so readers around
+         * the TTL boundary keep getting the cached value instead of waiting for a load. A read of such an
+         * entry returns it immediately and starts a reload on the {@link #refreshExecutor(Executor)}; reads
+         * after the reload completes get the new value, with a fresh TTL.
+         * <p>
+         * Reloads use the loader of the {@code getOrLoad} call that triggered them, or the handler's
+         * {@link #loader(CacheLoader)} for {@code getItem}. At most one reload per key runs at a time,
+         * shared by all threads of the handler. Requires a TTL longer than {@code duration}, and is not
+         * available with {@link #arrayBackedStorage()}.
+         * @param duration Entry age at which a read triggers a reload (0 or less disables refresh-ahead).
+         * @param unit Unit of {@code duration}.
+         * @return These options.
+         */
+        public Options refreshAfterWrite(long duration, TimeUnit unit) {
+            this.refreshAfterMillis = (duration > 0) ? Math.max(1, unit.toMillis(duration)) : 0;
+            return this;
+        }
+
+        /**
+         * Sets the executor for {@link #refreshAfterWrite(long, TimeUnit) refresh-ahead} reloads. Defaults to
+         * {@link ForkJoinPool#commonPool()}; loaders that block on I/O are better served by a dedicated pool
+         * or a virtual-thread-per-task executor.
+         * @param executor Runs background reloads.
+         * @return These options.
+         */
+        public Options refreshExecutor(Executor executor) {
+            this.refreshExecutor = Objects.requireNonNull(executor, "executor");
+            return this;
+        }
+
+        /**
+         * Sets the loader {@link #getOrLoadAsync(String)} uses to load missing values in batches.
+         * @param batchLoader Default batch loader for this handler.
+         * @return These options.
+         */
+        public Options batchLoader(BatchLoader<?> batchLoader) {
+            this.batchLoader = Objects.requireNonNull(batchLoader, "batchLoader");
+            return this;
+        }
+
+        /**
+         * Lets {@link #getOrLoadAsync(String)} misses on the same thread wait for each other, so they reach
+         * the {@link #batchLoader(BatchLoader)} as one request. Queued misses are loaded once
+         * {@code maxBatchSize} keys are pending, once the oldest has waited {@code maxDelay} (checked on
+         * the thread's next call, and by a background dispatcher at about that interval), or on
+         * {@link #dispatchLoads()}. Misses left by a thread that terminates are loaded by the dispatcher.
+         * Without a window every miss is loaded immediately.
+         * @param maxBatchSize Max keys per batch (must be positive).
+         * @param maxDelay Max time a miss waits for others (0 or less for no time limit).
+         * @param unit Unit of {@code maxDelay}.
+         * @return These options.
+         * @throws IllegalArgumentException if maxBatchSize is not positive.
+         */
+        public Options batchWindow(int maxBatchSize, long maxDelay, TimeUnit unit) {
+            if (maxBatchSize <= 0) {
+                throw new IllegalArgumentException("Max batch size must be positive.");
+            }
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchDelayNanos = (maxDelay > 0) ? unit.toNanos(maxDelay) : 0;
+            return this;
+        }
+
+        /**
+         * Sets the executor that loads the {@link #batchWindow(int, long, TimeUnit) batches} the background
+         * dispatcher sends: those past {@code maxDelay} and those of terminated threads. Defaults to
+         * {@link ForkJoinPool#commonPool()}; batch loaders that block on I/O are better served by a
+         * dedicated pool. Batches a thread sends itself are loaded on that thread.
+         * @param executor Runs background batch loads.
+         * @return These options.
+         */
+        public Options batchExecutor(Executor executor) {
+            this.batchExecutor = Objects.requireNonNull(executor, "executor");
+            return this;
+        }
+
+        /**
+         * Records hits, misses, evictions, expirations and loads, readable with {@link #stats()}. Each thread
+         * counts in plain fields of its own, summed only when stats are read, so recording costs a few
+         * uncontended increments. Disabled by default.
+         * @return These options.
+         */
+        public Options recordStats() {
+            this.recordStats = true;
+            return this;
+        }
+
+        /**
+         * Records a histogram of load times, readable with {@link #loadLatency()}, and optionally of
+         * {@code getItem} and {@code addItem} call times, readable with {@link #getLatency()} and
+         * {@link #addLatency()}. Together they show whether a slow tail comes from misses or from the cache
+         * itself. Also turns on {@link #recordStats()}.
+         * <p>
+         * Each thread records into fixed-size histograms of its own, allocated once and merged only when read,
+         * so recording allocates nothing; timing every operation costs two {@link System#nanoTime()} calls.
+         * @param includeOperations Whether to time {@code getItem} and {@code addItem} as well as loads.
+         * @return These options.
+         */
+        public Options recordLatencies(boolean includeOperations) {
+            this.recordStats = true;
+            this.recordLoadLatency = true;
+            this.recordOperationLatency = includeOperations;
+            return this;
+        }
+
+        /**
+         * Names the handler, e.g. for its MBean. Defaults to {@code LocalLruCache-<n>}.
+         * @param name Handler name.
+         * @return These options.
+         */
+        public Options name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        /**
+         * Registers a {@link LocalLruCacheMXBean} for the handler with the platform MBean server, so tools
+         * like JConsole can see how many per-thread stores it has, how full they are, how much memory they
+         * take and its {@link #recordStats() stats}, and can clear or resize it. Unregister it with
+         * {@link LocalLruCache#unregisterMBean()} when the handler is no longer used; until then the
+         * MBean server keeps the handler reachable.
+         * <p>
+         * In {@link Mode#THREAD_LOCAL} this lets other threads clear or resize each thread's store at once,
+         * as the {@link #expirySweepInterval(long, TimeUnit) expiry sweeper} does, which costs the owner two
+         * volatile writes and a volatile read per store operation. Without it, {@link LocalLruCache#clear()}
+         * from another thread is applied on each owner's next call.
+         * @return These options.
+         */
+        public Options registerMBean() {
+            this.registerMBean = true;
+            return this;
+        }
+    }
+
+    /**
+     * Minimal operations the handler needs from a backing store, whether thread-local or shared.
+     */
+    interface CacheStore {
+        CacheEntry<?> getEntry(String key);
+
+        /**
+         * @return Number of entries evicted to make room, for a size or weight bound.
+         */
+        int putEntry(String key, CacheEntry<?> value);
+
+        void removeEntry(String key);
+
+        /**
+         * Removes an expired mapping, but only if it is still {@code expected}, so a racing overwrite
+         * is not lost.
+         */
+        void expireEntry(String key, CacheEntry<?> expected);
+
+        /**
+         * Reclaims entries whose TTL has passed, in amortized O(1) via the store's {@link TimerWheel}.
+         * Called by the handler before each operation on TTL-enabled handlers.
+         * @param nowMillis Current time from the handler's {@link Ticker}.
+         */
+        void cleanUp(long nowMillis);
+
+        /**
+         * @return Number of entries. Other threads may call this on a per-thread store and see a recent count.
+         */
+        int size();
+
+        /**
+         * @return Rough heap bytes taken by the store's own bookkeeping, assuming compressed references; keys
+         *         and values are not counted. Other threads may call this, like {@link #size()}.
+         */
+        long estimatedMemoryBytes();
+
+        /**
+         * Removes every entry, as {@link RemovalCause#EXPLICIT} removals.
+         */
+        void clear();
+
+        /**
+         * Changes the max number of entries, evicting least recently used ones at once if over it.
+         * @param capacity New capacity. Must be positive.
+         */
+        void setCapacity(int capacity);
+
+        /**
+         * @return The counters this store records its evictions and expirations in, and the handler its
+         *         hits, misses and loads for the owning thread; null if not recording or not per-thread.
+         */
+        default StatsCounter stats() {
+            return null;
+        }
+
+        /**
+         * Reads a value without handing a {@link CacheEntry} to the caller. {@link ArrayLruStore} reads it
+         * straight from its slot arrays, allocating nothing; other stores look up the entry.
+         * @return The value, or null if absent or expired (an expired entry is removed).
+         */
+        default Object getValue(String key, long nowMillis) {
+            CacheEntry<?> entry = getEntry(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(nowMillis)) {
+                expireEntry(key, entry);
+                return null;
+            }
+            return entry.value;
+        }
+
+        /**
+         * Writes a value of weight 1. {@link ArrayLruStore} writes it into a slot in place, allocating
+         * nothing; other stores wrap it in a {@link CacheEntry}.
+         * @param expirationTimeMillis Absolute expiration time, or 0 for none.
+         * @return Number of entries evicted to make room.
+         */
+        default int putValue(String key, Object value, long expirationTimeMillis) {
+            // With a clock reading of 0, the TTL argument is the absolute expiration time.
+            return putEntry(key, new CacheEntry<>(key, value, expirationTimeMillis, 0, 1));
+        }
+
+        /**
+         * Reads a value by a {@link CacheKey}. {@link ArrayLruStore} probes with the handle's precomputed
+         * hash; other stores read by its {@code String}.
+         */
+        default Object getValue(CacheKey key, long nowMillis) {
+            return getValue(key.key, nowMillis);
+        }
+
+        /**
+         * Writes a value under a {@link CacheKey}'s {@code String}. {@link ArrayLruStore} probes with the
+         * handle's precomputed hash; other stores write by its {@code String}.
+         * @return Number of entries evicted to make room.
+         */
+        default int putValue(CacheKey key, Object value, long expirationTimeMillis) {
+            return putValue(key.key, value, expirationTimeMillis);
+        }
+
+        /**
+         * Reads a value by a key given as characters or bytes. {@link ArrayLruStore} compares them against
+         * stored keys in place; other stores are keyed by {@code String} maps, so they read by
+         * {@code key.toString()}.
+         */
+        default Object getValue(KeyProbe key, long nowMillis) {
+            return getValue(key.toString(), nowMillis);
+        }
+    }
+
+    /**
+     * Why an entry left a store.
+     */
+    enum RemovalCause {
+        /** Removed by the handler's API. */
+        EXPLICIT,
+        /** Overwritten by a newer value for the same key. */
+        REPLACED,
+        /** Its TTL passed. */
+        EXPIRED,
+        /** Evicted to stay within the store's capacity or weight bound. */
+        SIZE
+    }
+
+    /**
+     * Notified by a store, on the thread that removed it, whenever an entry leaves the store.
+     * Lets the handler release resources held by the entry (e.g. off-heap memory).
+     */
+    interface RemovalListener {
+        void onRemoval(CacheEntry<?> entry, RemovalCause cause);
+    }
+
+    /**
+     * An entry in the cache, storing its key, the value and its expiration time.
+     * @param <V> Value type.
+     */
+    static class CacheEntry<V> {
+        final String key;
+        final V value;
+        final long expirationTimeMillis; // 0 or less means no TTL
+        final long writeTimeMillis; // When the value was written or loaded; refresh-ahead measures its age from it
+        final int weight; // 1 unless the handler has a Weigher
+
+        // Links in the owning store's TimerWheel bucket; null while not scheduled.
+        CacheEntry<?> timerPrev;
+        CacheEntry<?> timerNext;
+
+        /**
+         * Creates a cache entry.
+         * @param key Key the entry is stored under.
+         * @param value Value to cache.
+         * @param ttlMillis TTL in milliseconds (0 or less for no TTL).
+         * @param nowMillis Current time from the handler's {@link Ticker}; ignored without a TTL.
+         * @param weight Weight of the entry toward the store's maximum weight.
+         */
+        CacheEntry(String key, V value, long ttlMillis, long nowMillis, int weight) {
+            this(key, value, ttlMillis, nowMillis, weight, nowMillis);
+        }
+
+        /**
+         * Creates a cache entry whose value is older, or newer, than the time its TTL counts from: one
+         * loaded after the lookup that missed, or promoted from the overflow tier.
+         * @param writeTimeMillis Time the value was written or loaded.
+         */
+        CacheEntry(String key, V value, long ttlMillis, long nowMillis, int weight, long writeTimeMillis) {
+            this.key = key;
+            this.value = value;
+            this.expirationTimeMillis = (ttlMillis > 0) ? nowMillis + ttlMillis : 0;
+            this.writeTimeMillis = writeTimeMillis;
+            this.weight = weight;
+        }
+
+        /**
+         * @return A placeholder entry heading a {@link TimerWheel} bucket.
+         */
+        static CacheEntry<Void> sentinel() {
+            return new CacheEntry<>(null, null, 0, 0, 0);
+        }
+
+        /**
+         * Checks if expired.
+         * @param nowMillis Current time from the handler's {@link Ticker}.
+         * @return True if expired, false otherwise (including if no TTL).
+         */
+        boolean isExpired(long nowMillis) {
+            return expirationTimeMillis > 0 && nowMillis > expirationTimeMillis;
+        }
+
+        /**
+         * @return True if this entry has a TTL at all.
+         */
+        boolean hasExpiration() {
+            return expirationTimeMillis > 0;
+        }
+
+        V getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Core LRU cache for each thread, extending {@link LinkedHashMap}.
+     * Not thread-safe on its own; {@link LocalLruCache} ensures per-thread instances.
+     * Stores {@link CacheEntry} objects, and tracks their expiration in a {@link TimerWheel} when the
+     * handler has a TTL.
+     */
+    @SuppressWarnings("rawtypes") // Suppress warning for using raw CacheEntry type in LinkedHashMap
+    private static class SimpleLruCache extends LinkedHashMap<String, CacheEntry>
+            implements CacheStore, TimerWheel.Expirer {
+        /** LinkedHashMap entry, CacheEntry and table slot. */
+        private static final int ENTRY_OVERHEAD_BYTES = 112;
+
+        private int capacity;
+        private final long maximumWeight; // Long.MAX_VALUE if only the entry count is bounded
+        private final TimerWheel timerWheel; // null if the handler has no TTL
+        private final RemovalListener removalListener; // null if the handler doesn't need one
+        private final StatsCounter stats; // null unless the handler records stats
+        private long totalWeight;
+        private int evictedByPut; // Evictions during the current putEntry
+
+        /**
+         * Creates a SimpleLruCache.
+         * @param capacity Max entries. Must be positive.
+         * @param maximumWeight Max total weight of entries ({@link Long#MAX_VALUE} for no bound).
+         * @param expiring Whether entries have a TTL and need a timer wheel.
+         * @param nowMillis Current time from the handler's {@link Ticker}.
+         * @param removalListener Notified of every removed entry, or null.
+         * @param stats Counters for this thread, or null.
+         */
+        SimpleLruCache(int capacity, long maximumWeight, boolean expiring, long nowMillis,
+                       RemovalListener removalListener, StatsCounter stats) {
+            // true for access-order, which is essential for LRU behavior
+            super(capacity, 0.75f, true);
+            this.capacity = capacity;
+            this.maximumWeight = maximumWeight;
+            this.timerWheel = expiring ? new TimerWheel(this, nowMillis) : null;
+            this.removalListener = removalListener;
+            this.stats = stats;
+        }
+
+        /**
+         * Called after put: remove eldest if size > capacity.
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            if (size() > capacity) {
+                onRemoved(eldest.getValue(), RemovalCause.SIZE);
+                evictedByPut++;
+                return true;
+            }
+            return false;
+        }
+
+        // These methods operate on the LinkedHashMap instance. Since each thread has its
+        // own SimpleLruCache (and thus its own LinkedHashMap) via ThreadLocal,
+        // external synchronization is not needed for thread safety here.
+        // LinkedHashMap itself is not thread-safe if shared, but it's not shared across threads here.
+        @Override
+        public CacheEntry<?> getEntry(String key) {
+            return super.get(key);
+        }
+
+        @Override
+        public int putEntry(String key, CacheEntry<?> value) {
+            evictedByPut = 0;
+            totalWeight += value.weight;
+            if (timerWheel != null) {
+                timerWheel.schedule(value);
+            }
+            CacheEntry<?> previous = super.put(key, value);
+            if (previous != null) {
+                onRemoved(previous, RemovalCause.REPLACED);
+            }
+            // removeEldestEntry bounds the count; evict least recently used entries until under the weight bound.
+            if (totalWeight > maximumWeight) {
+                Iterator<CacheEntry> eldestFirst = values().iterator();
+                while (totalWeight > maximumWeight && eldestFirst.hasNext()) {
+                    CacheEntry<?> eldest = eldestFirst.next();
+                    eldestFirst.remove();
+                    onRemoved(eldest, RemovalCause.SIZE);
+                    evictedByPut++;
+                }
+            }
+            return evictedByPut;
+        }
+
+        @Override
+        public void removeEntry(String key) {
+            CacheEntry<?> removed = super.remove(key);
+            if (removed != null) {
+                onRemoved(removed, RemovalCause.EXPLICIT);
+            }
+        }
+
+        @Override
+        public void expireEntry(String key, CacheEntry<?> expected) {
+            if (super.remove(key, expected)) {
+                onRemoved(expected, RemovalCause.EXPIRED);
+            }
+        }
+
+        @Override
+        public void cleanUp(long nowMillis) {
+            if (timerWheel != null) {
+                timerWheel.advance(nowMillis);
+            }
+        }
+
+        @Override
+        public long estimatedMemoryBytes() {
+            return (long) size() * ENTRY_OVERHEAD_BYTES;
+        }
+
+        @Override
+        public void clear() {
+            for (CacheEntry<?> entry : values()) {
+                onRemoved(entry, RemovalCause.EXPLICIT);
+            }
+            super.clear();
+        }
+
+        @Override
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+            Iterator<CacheEntry> eldestFirst = values().iterator();
+            while (size() > capacity && eldestFirst.hasNext()) {
+                CacheEntry<?> eldest = eldestFirst.next();
+                eldestFirst.remove();
+                onRemoved(eldest, RemovalCause.SIZE);
+            }
+        }
+
+        @Override
+        public StatsCounter stats() {
+            return stats;
+        }
+
+        /** Called by the timer wheel for an entry that has expired; it is already unscheduled. */
+        @Override
+        public void expire(CacheEntry<?> entry) {
+            if (super.remove(entry.key, entry)) {
+                onRemoved(entry, RemovalCause.EXPIRED);
+            }
+        }
+
+        /** Bookkeeping for an entry that has left the map by any path. */
+        private void onRemoved(CacheEntry<?> entry, RemovalCause cause) {
+            totalWeight -= entry.weight;
+            if (timerWheel != null) {
+                timerWheel.deschedule(entry);
+            }
+            if (stats != null) {
+                stats.recordRemoval(cause);
+            }
+            if (removalListener != null) {
+                removalListener.onRemoval(entry, cause);
+            }
+        }
+    }
+
+    /**
+     * Holds each thread's store: a {@link SimpleLruCache}, or a {@link PolicyStore} for non-LRU policies.
+     * Transient as ThreadLocal isn't typically serializable.
+     */
+    private transient ThreadLocal<ThreadStore> threadLocalCache;
+
+    /** The process-wide store in {@link Mode#SHARED}; null in {@link Mode#THREAD_LOCAL}. */
+    private final SharedLruStore sharedStore;
+
+    /** Every live thread's store, for enumerating, measuring, clearing and sweeping; null in shared mode. */
+    private final StoreRegistry storeRegistry;
+
+    /** Whether thread-local stores are wrapped in an {@link OwnedStore}, so other threads can act on them at once. */
+    private final boolean ownedStores;
+
+
+    /**
+     * Creates a {@code LocalLruCache} handler with specified global defaults for capacity and TTL.
+     * <p>
+     * Threads using this handler get a local cache with these settings.
+     * Example:
+     * <pre>{@code
+     * LocalLruCache handler1 = LocalLruCache.initialize(100, 60); // 100 items, 60s TTL
+     * LocalLruCache handler2 = LocalLruCache.initialize(50, 0);   // 50 items, no TTL
+     * }</pre>
+     * This handler is a configuration snapshot; data is in thread-local stores.
+     *
+     * @param capacity Max items per thread's cache (must be positive).
+     * @param ttlSeconds TTL for entries in seconds (0 or less for infinite TTL).
+     * @return A configured {@code LocalLruCache} handler.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public static LocalLruCache initialize(int capacity, long ttlSeconds) {
+        return initialize(capacity, ttlSeconds, new Options());
+    }
+
+    /**
+     * Creates a {@code LocalLruCache} handler with the given capacity, TTL and additional options.
+     * <p>
+     * Example:
+     * <pre>{@code
+     * // One cache of 10,000 items shared by every thread, instead of 10,000 items per thread
+     * LocalLruCache shared = LocalLruCache.initialize(10_000, 60, new LocalLruCache.Options().mode(Mode.SHARED));
+     * }</pre>
+     *
+     * @param capacity Max items per thread's cache, or in total for {@link Mode#SHARED} (must be positive).
+     * @param ttlSeconds TTL for entries in seconds (0 or less for infinite TTL).
+     * @param options Additional settings, such as the storage {@link Mode}.
+     * @return A configured {@code LocalLruCache} handler.
+     * @throws IllegalArgumentException if capacity is not positive, or the options can't be combined.
+     * @throws java.io.UncheckedIOException if an overflow tier file cannot be mapped.
+     * @throws IllegalStateException if an MBean is requested and one with the same name is already registered.
+     */
+    public static LocalLruCache initialize(int capacity, long ttlSeconds, Options options) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        Objects.requireNonNull(options, "options");
+        if (options.arrayBacked) {
+            if (options.mode != Mode.THREAD_LOCAL || options.policy != Policy.LRU || options.maximumWeight != Long.MAX_VALUE
+                    || options.offHeapAccess != null || options.overflowFile != null) {
+                throw new IllegalArgumentException("Array-backed storage supports only thread-local LRU stores "
+                        + "without a weight bound, off-heap values or an overflow tier.");
+            }
+            if (capacity > ArrayLruStore.MAX_CAPACITY) {
+                throw new IllegalArgumentException("Array-backed capacity must be at most " + ArrayLruStore.MAX_CAPACITY + ".");
+            }
+        }
+        if (options.refreshAfterMillis > 0) {
+            if (ttlSeconds <= 0 || options.refreshAfterMillis >= ttlSeconds * 1000) {
+                throw new IllegalArgumentException("Refresh interval must be shorter than a positive TTL.");
+            }
+            if (options.arrayBacked) {
+                throw new IllegalArgumentException("Refresh-ahead is not available with array-backed storage.");
+            }
+        }
+        // Update global defaults; new LocalLruCache handlers will use these.
+        globalDefaultCapacity = capacity;
+        globalDefaultTtlMillis = (ttlSeconds > 0) ? ttlSeconds * 1000 : 0;
+
+        // Return a new handler instance that captures the current global settings.
+        return new LocalLruCache(globalDefaultCapacity, globalDefaultTtlMillis, options);
+    }
+
+    /**
+     * Private constructor. Use {@link #initialize(int, long)}.
+     * Captures global capacity/TTL at its creation for this handler instance.
+     * These are then used for this handler's {@link ThreadLocal} caches, or its shared store.
+     *
+     * @param capacity Capacity for this handler's thread-local caches (or shared store).
+     * @param ttlMillis TTL (ms) for this handler's entries.
+     * @param options Mode, policy, ticker, sweeper, weight, off-heap, overflow, loading and refresh settings for this handler.
+     */
+    private LocalLruCache(int capacity, long ttlMillis, Options options) {
+        this.name = (options.name != null) ? options.name : "LocalLruCache-" + handlerSequence.incrementAndGet();
+        this.instanceCapacity = capacity;
+        this.instanceTtlMillis = ttlMillis;
+        this.instanceMode = options.mode;
+        this.instancePolicy = options.policy;
+        this.ticker = options.ticker;
+        this.instanceMaximumWeight = options.maximumWeight;
+        if (options.maximumWeight == Long.MAX_VALUE) {
+            this.weigher = null;
+        } else {
+            this.weigher = (options.weigher != null) ? options.weigher : Weigher.builtIn(Weigher.singleton());
+        }
+        this.arrayBacked = options.arrayBacked;
+        this.defaultLoader = options.loader;
+        this.singleFlight = options.singleFlight ? new SingleFlight() : null;
+        this.batchLoader = options.batchLoader;
+        this.maxBatchSize = options.maxBatchSize;
+        this.maxBatchDelayNanos = options.maxBatchDelayNanos;
+        this.pendingLoads = (options.batchLoader != null) ? ThreadLocal.withInitial(this::newPendingLoads) : null;
+        this.batchQueues = (options.batchLoader != null && options.maxBatchSize > 1) ? new ConcurrentLinkedQueue<>() : null;
+        this.batchExecutor = options.batchExecutor;
+        this.recordLoadLatency = options.recordLoadLatency;
+        this.recordOperationLatency = options.recordOperationLatency;
+        this.threadStats = options.recordStats ? new ConcurrentLinkedQueue<>() : null;
+        this.retiredStats = new StatsCounter(null, recordLoadLatency, recordOperationLatency);
+        this.sharedModeStats = (options.recordStats && options.mode == Mode.SHARED)
+                ? ThreadLocal.withInitial(this::newThreadStats) : null;
+        this.batchExecutorStats = (options.recordStats && batchQueues != null && options.mode != Mode.SHARED)
+                ? ThreadLocal.withInitial(this::newThreadStats) : null;
+        this.refreshAhead = (options.refreshAfterMillis > 0)
+                ? new RefreshAhead(options.refreshAfterMillis, ttlMillis, options.refreshExecutor, options.ticker, capacity)
+                : null;
+        this.offHeapAccess = options.offHeapAccess;
+        this.offHeap = (options.offHeapAccess != null) ? new SlabAllocator() : null;
+        this.overflowTier = (options.overflowFile != null)
+                ? new MappedOverflowTier(options.overflowFile, options.overflowSizeBytes) : null;
+        this.removalListener = (this.offHeap != null || this.overflowTier != null) ? this::onRemoval : null;
+
+        if (instanceMode == Mode.SHARED) {
+            // All threads using THIS handler instance share one striped store.
+            this.sharedStore = new SharedLruStore(this.instanceCapacity, this.instanceMaximumWeight,
+                    this.instancePolicy, this.instanceTtlMillis > 0, ticker.currentTimeMillis(), this.removalListener,
+                    options.recordStats);
+            this.maximumEntryWeight = sharedStore.maximumEntryWeight();
+            this.storeRegistry = null;
+            this.ownedStores = false;
+        } else {
+            // Each thread using THIS handler instance gets its own store,
+            // configured with this handler's captured capacity, TTL and policy settings.
+            this.sharedStore = null;
+            this.maximumEntryWeight = this.instanceMaximumWeight;
+            boolean sweeping = options.expirySweepIntervalMillis > 0 && this.instanceTtlMillis > 0;
+            this.storeRegistry = new StoreRegistry();
+            this.ownedStores = sweeping || options.registerMBean;
+            this.threadLocalCache = ThreadLocal.withInitial(this::newThreadLocalStore);
+        }
+
+        if (options.expirySweepIntervalMillis > 0 && this.instanceTtlMillis > 0) {
+            ExpirySweeper.schedule(this, options.expirySweepIntervalMillis);
+        }
+        if (batchQueues != null) {
+            BatchDispatcher.schedule(this, (maxBatchDelayNanos > 0)
+                    ? Math.max(maxBatchDelayNanos, BatchDispatcher.MIN_INTERVAL_NANOS) : BatchDispatcher.IDLE_INTERVAL_NANOS);
+        }
+        if (options.registerMBean) {
+            this.mbeanName = CacheManagement.register(this);
+        }
+    }
+
+    private ThreadStore newThreadLocalStore() {
+        boolean expiring = instanceTtlMillis > 0;
+        long now = expiring ? ticker.currentTimeMillis() : 0;
+        int capacity = instanceCapacity;
+        StatsCounter stats = (threadStats != null) ? newThreadStats() : null;
+        CacheStore store;
+        if (arrayBacked) {
+            store = new ArrayLruStore(capacity, expiring, stats);
+        } else if (instancePolicy == Policy.LRU) {
+            store = new SimpleLruCache(capacity, instanceMaximumWeight, expiring, now, removalListener, stats);
+        } else {
+            store = new PolicyStore(capacity, instanceMaximumWeight, instancePolicy, expiring, now,
+                    removalListener, stats);
+        }
+        if (ownedStores) {
+            // Let the sweeper and MBean act on this thread's store at once, coordinating with us through OwnedStore.
+            store = new OwnedStore(store);
+        }
+        ThreadStore local = new ThreadStore(store, offHeap != null); // Off-heap chunks must be freed explicitly
+        storeRegistry.register(local);
+        if (instanceCapacity != capacity) {
+            store.setCapacity(instanceCapacity); // Resized while we were registering
+        }
+        return local;
+    }
+
+    /**
+     * @return The name of this handler, as set by {@link Options#name(String)} or generated.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Unregisters this handler's MBean, if it has one; see {@link Options#registerMBean()}.
+     */
+    public void unregisterMBean() {
+        ObjectName registered = mbeanName;
+        if (registered != null) {
+            mbeanName = null;
+            CacheManagement.unregister(registered);
+        }
+    }
+
+    int capacity() {
+        return instanceCapacity;
+    }
+
+    /**
+     * Calls {@code action} for the shared store, or for every live thread's store.
+     */
+    private void forEachStore(Consumer<CacheStore> action) {
+        if (sharedStore != null) {
+            action.accept(sharedStore);
+        } else {
+            storeRegistry.forEach(local -> action.accept(local.store));
+        }
+    }
+
+    /**
+     * @return Number of threads whose store for this handler is alive, or 1 in {@link Mode#SHARED}.
+     *         Stores of terminated threads are not counted, even before they are collected.
+     */
+    public int liveStoreCount() {
+        int[] count = new int[1];
+        forEachStore(store -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Counts entries across all live stores. Other threads' counts are read without stopping them, so they
+     * may lag slightly.
+     *
+     * @return Number of entries, including expired ones not yet reclaimed.
+     */
+    public long totalEntryCount() {
+        long[] total = new long[1];
+        forEachStore(store -> total[0] += store.size());
+        return total[0];
+    }
+
+    /**
+     * @return Number of entries in the fullest live store; see {@link #totalEntryCount()}.
+     */
+    public int maxStoreEntryCount() {
+        int[] max = new int[1];
+        forEachStore(store -> max[0] = Math.max(max[0], store.size()));
+        return max[0];
+    }
+
+    /**
+     * Estimates the memory this handler holds across all live stores: each store's bookkeeping (entry
+     * objects, table slots, or preallocated arrays) plus native memory reserved for off-heap values.
+     * Keys and values on the heap are not counted; use a byte-based {@link Weigher} to bound those.
+     *
+     * @return Estimated bytes.
+     */
+    public long estimatedMemoryBytes() {
+        long[] total = {(offHeap != null) ? offHeap.reservedBytes() : 0};
+        forEachStore(store -> total[0] += store.estimatedMemoryBytes());
+        return total[0];
+    }
+
+    /**
+     * Removes every entry from every thread's store (and the overflow tier, if any).
+     * <p>
+     * The calling thread's store is cleared at once. So is every other thread's, if the handler has an
+     * {@link Options#expirySweepInterval(long, TimeUnit) expiry sweeper} or {@link Options#registerMBean() MBean}
+     * (then each store is cleared between two of its owner's calls). Otherwise other threads' stores,
+     * which cannot be touched without slowing down their owners, are cleared on their owner's next call;
+     * stores of threads that never use the handler again are collected with their threads.
+     */
+    public void clear() {
+        if (sharedStore != null) {
+            sharedStore.clear();
+        } else {
+            storeRegistry.forEach(ThreadStore::clear);
+        }
+        if (overflowTier != null) {
+            overflowTier.clear();
+        }
+    }
+
+    /**
+     * Removes {@code key} from every thread's store (and the overflow tier, if any), for example after its
+     * source data changed.
+     * <p>
+     * The calling thread's store, a {@link Mode#SHARED} store and the overflow tier drop the entry at once.
+     * Other threads' stores, which cannot be touched without slowing down their owners, get the key through
+     * a lock-free queue and drop it at the start of their owner's next {@code getItem}, {@code addItem} or
+     * other call, before that call looks anything up. If a thread falls more than
+     * {@value ThreadStore#MAX_QUEUED_INVALIDATIONS} invalidations behind, its whole store is cleared instead.
+     * <p>
+     * Loads of the key still running, which may have read the old data, are not cached: a
+     * {@link Options#singleFlightLoading() single-flight} load or {@link Options#refreshAfterWrite(long, TimeUnit)
+     * reload} returns its value to the threads waiting for it but does not keep it, and batch values loaded
+     * for a thread in the background are dropped.
+     *
+     * @param key Item's key.
+     */
+    public void invalidate(String key) {
+        Objects.requireNonNull(key, "key");
+        detachLoads(key);
+        if (sharedStore != null) {
+            sharedStore.removeEntry(key);
+        } else {
+            storeRegistry.forEach(local -> local.invalidate(key));
+        }
+        if (overflowTier != null) {
+            overflowTier.invalidate(key);
+        }
+    }
+
+    /**
+     * Removes each of {@code keys} from every thread's store, as {@link #invalidate(String)} does.
+     *
+     * @param keys Items' keys.
+     */
+    public void invalidateAll(Collection<String> keys) {
+        List<String> copy = List.copyOf(keys); // Owners drain it later; don't keep the caller's collection
+        if (copy.isEmpty()) {
+            return;
+        }
+        copy.forEach(this::detachLoads);
+        if (sharedStore != null) {
+            for (String key : copy) {
+                sharedStore.removeEntry(key);
+            }
+        } else {
+            storeRegistry.forEach(local -> local.invalidateAll(copy));
+        }
+        if (overflowTier != null) {
+            for (String key : copy) {
+                overflowTier.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Keeps the loads of {@code key} now running from caching their values. Called before the key is
+     * removed from the stores, so a value a load cached before this is removed along with the rest.
+     */
+    private void detachLoads(String key) {
+        if (singleFlight != null) {
+            singleFlight.invalidate(key);
+        }
+        if (refreshAhead != null) {
+            refreshAhead.invalidate(key);
+        }
+        if (batchQueues != null) {
+            for (PendingLoads pending : batchQueues) {
+                pending.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Changes the capacity of every live store and of stores created from now on; live stores are resized
+     * with the same timing as {@link #clear()}.
+     * @throws IllegalArgumentException if capacity is not positive, or too large for array-backed storage.
+     */
+    void resize(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        if (arrayBacked && capacity > ArrayLruStore.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Array-backed capacity must be at most " + ArrayLruStore.MAX_CAPACITY + ".");
+        }
+        instanceCapacity = capacity;
+        if (sharedStore != null) {
+            sharedStore.setCapacity(capacity);
+        } else {
+            storeRegistry.forEach(local -> local.setCapacity(capacity));
+        }
+    }
+
+    private CacheEvents.EvictionTally newEvictionTally() {
+        return new CacheEvents.EvictionTally(name);
+    }
+
+    /** Creates and registers the calling thread's stats counters. */
+    private StatsCounter newThreadStats() {
+        StatsCounter stats = new StatsCounter(Thread.currentThread(), recordLoadLatency, recordOperationLatency);
+        threadStats.add(stats);
+        return stats;
+    }
+
+    /**
+     * @return The calling thread's stats counters for {@code store}, or null if the handler doesn't record stats.
+     */
+    private StatsCounter statsFor(CacheStore store) {
+        if (threadStats == null) {
+            return null;
+        }
+        return (sharedStore != null) ? sharedModeStats.get() : store.stats();
+    }
+
+    /**
+     * Sums the statistics recorded by all threads using this handler, including threads that have
+     * terminated. Counts from threads that are running may lag slightly behind.
+     *
+     * @return A snapshot of the statistics; all zero unless the handler was created with
+     *         {@link Options#recordStats()}.
+     */
+    public CacheStats stats() {
+        return aggregateStats().snapshot();
+    }
+
+    /**
+     * Merges the load-time histograms of all threads using this handler, including threads that have terminated.
+     *
+     * @return Percentiles of the time spent in loaders, per {@code getOrLoad} miss or batch; empty unless the
+     *         handler was created with {@link Options#recordLatencies(boolean)}.
+     */
+    public LatencySnapshot loadLatency() {
+        return latencySnapshot(aggregateStats().loadLatency);
+    }
+
+    /**
+     * Merges the {@code getItem} time histograms of all threads using this handler.
+     *
+     * @return Percentiles of the time spent in {@code getItem} calls; empty unless the handler was created
+     *         with {@code Options.recordLatencies(true)}.
+     */
+    public LatencySnapshot getLatency() {
+        return latencySnapshot(aggregateStats().getLatency);
+    }
+
+    /**
+     * Merges the {@code addItem} time histograms of all threads using this handler.
+     *
+     * @return Percentiles of the time spent in {@code addItem} calls; empty unless the handler was created
+     *         with {@code Options.recordLatencies(true)}.
+     */
+    public LatencySnapshot addLatency() {
+        return latencySnapshot(aggregateStats().addLatency);
+    }
+
+    private static LatencySnapshot latencySnapshot(LatencyHistogram histogram) {
+        return (histogram != null) ? histogram.snapshot() : new LatencyHistogram().snapshot();
+    }
+
+    /**
+     * Adds up every thread's counters (and the shared store's), folding those of terminated threads
+     * into {@link #retiredStats}.
+     */
+    private StatsCounter aggregateStats() {
+        StatsCounter total = new StatsCounter(null, recordLoadLatency, recordOperationLatency);
+        if (threadStats == null) {
+            return total;
+        }
+        for (StatsCounter stats : threadStats) {
+            if (stats.isRetired() && threadStats.remove(stats)) {
+                // Its thread is gone and can't count any more; keep its totals without tracking it.
+                synchronized (retiredStats) {
+                    stats.addTo(retiredStats);
+                }
+            } else {
+                stats.addTo(total);
+            }
+        }
+        synchronized (retiredStats) {
+            retiredStats.addTo(total);
+        }
+        if (sharedStore != null) {
+            sharedStore.addStatsTo(total);
+        }
+        return total;
+    }
+
+    /**
+     * Spills an entry evicted for size to the overflow tier, then releases what it held outside the
+     * store, e.g. its off-heap memory.
+     */
+    private void onRemoval(CacheEntry<?> entry, RemovalCause cause) {
+        if (cause == RemovalCause.SIZE && overflowTier != null) {
+            Object value = entry.value;
+            if (value instanceof SlabAllocator.OffHeapValue) {
+                value = ((SlabAllocator.OffHeapValue) value).copy();
+            }
+            if (value != null) {
+                overflowTier.spill(entry.key, value, entry.expirationTimeMillis, entry.writeTimeMillis);
+            }
+        }
+        if (entry.value instanceof SlabAllocator.OffHeapValue) {
+            offHeap.free((SlabAllocator.OffHeapValue) entry.value);
+        }
+    }
+
+    /**
+     * Looks up a key that missed in {@code store} in the overflow tier and, on a hit, promotes it back
+     * into the store with its remaining TTL.
+     * @return The promoted entry, or null if the tier doesn't have a live value for the key.
+     */
+    private CacheEntry<?> promoteFromOverflow(CacheStore store, String key, long now) {
+        MappedOverflowTier.Record record = overflowTier.find(key, now);
+        if (record == null) {
+            return null;
+        }
+        Object value = overflowTier.read(record);
+        if (value == null) {
+            return null;
+        }
+        int weight = (weigher != null) ? weigher.weigh(key, value) : 1;
+        long ttl = (record.expirationTimeMillis > 0) ? Math.max(1, record.expirationTimeMillis - now) : 0;
+        if (weight < 0 || weight > maximumEntryWeight) {
+            // Serve it, but it can't fit in the store
+            return new CacheEntry<>(key, value, ttl, now, weight, record.writeTimeMillis);
+        }
+        Object stored = (offHeap != null && value instanceof byte[]) ? offHeap.store((byte[]) value) : value;
+        CacheEntry<?> entry = new CacheEntry<>(key, stored, ttl, now, weight, record.writeTimeMillis);
+        store.putEntry(key, entry);
+        return entry;
+    }
+
+    /**
+     * Reclaims expired entries from the shared store, or from every thread's store that is not in use.
+     * Called periodically by the {@link ExpirySweeper}.
+     */
+    void sweepExpired() {
+        long now = ticker.currentTimeMillis();
+        CacheEvents.ExpirySweep event = CacheEvents.beginSweep();
+        if (sharedStore != null) {
+            int before = sharedStore.size();
+            sharedStore.cleanUp(now);
+            // Approximate: other threads may add or remove entries meanwhile.
+            CacheEvents.endSweep(event, name, 1, 0, Math.max(0, before - sharedStore.size()));
+        } else {
+            int[] stores = new int[2]; // Swept, skipped
+            long[] removed = new long[1];
+            storeRegistry.forEach(store -> {
+                int expired = store.trySweep(now);
+                if (expired >= 0) {
+                    stores[0]++;
+                    removed[0] += expired;
+                } else {
+                    stores[1]++;
+                }
+            });
+            CacheEvents.endSweep(event, name, stores[0], stores[1], removed[0]);
+        }
+    }
+
+    /**
+     * Resolves the store for the calling thread: the shared store, or this thread's own cache.
+     */
+    private CacheStore store() {
+        SharedLruStore shared = sharedStore;
+        if (shared != null) {
+            return shared;
+        }
+        ThreadStore local = threadLocalCache.get();
+        if (local.hasPendingRequests()) {
+            local.applyPendingRequests(); // e.g. a clear() from another thread
+        }
+        return local.store;
+    }
+
+    /**
+     * @return The storage engine this handler was initialized with.
+     */
+    public Mode getMode() {
+        return instanceMode;
+    }
+
+    /**
+     * @return The eviction policy this handler was initialized with.
+     */
+    public Policy getPolicy() {
+        return instancePolicy;
+    }
+
+    /**
+     * Adds an item to the current thread's local cache.
+     * Uses the TTL policy of this {@code LocalLruCache} handler.
+     * Overwrites existing items with the same key.
+     * <p>
+     * This generic method can be used for any type, including byte arrays or custom objects.
+     * For example:
+     * <pre>{@code
+     * cache.addItem("myBytes", new byte[]{1, 2, 3});
+     * cache.addItem("myObject", new MyCustomObject());
+     * }</pre>
+     *
+     * @param key Item's key.
+     * @param value Item's value.
+     * @param <V> Value type.
+     * @throws IllegalArgumentException if the handler's {@link Weigher} returns a negative weight.
+     */
+    public <V> void addItem(String key, V value) {
+        long start = recordOperationLatency ? System.nanoTime() : 0;
+        CacheStore store = store();
+        // Reclaim expired entries before they compete for capacity
+        write(store, key, value, cleanUpAndGetTime(store));
+        if (recordOperationLatency) {
+            statsFor(store).addLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Retrieves an item from the current thread's local cache.
+     * Returns null if not found or if the item has expired (and removes it).
+     * <p>
+     * The caller is responsible for casting the returned value to the expected type.
+     * For example:
+     * <pre>{@code
+     * String strVal = cache.getItem("stringKey"); // Implicit cast may work for Object to String
+     * byte[] bytesVal = (byte[]) cache.getItem("byteKey");
+     * MyCustomObject objVal = (MyCustomObject) cache.getItem("objectKey");
+     * }</pre>
+     *
+     * With {@link OffHeapAccess#READ_ONLY_VIEW}, {@code byte[]} values come back as a read-only
+     * {@link java.nio.ByteBuffer} instead.
+     *
+     * @param key Item's key.
+     * @param <V> Expected value type (casting is attempted by the JVM on assignment).
+     * @return The value, or null if not found/expired.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V getItem(String key) {
+        long start = recordOperationLatency ? System.nanoTime() : 0;
+        CacheStore store = store();
+        // Caller is responsible for knowing the type and casting appropriately.
+        return (V) timeGet(store, start, read(store, key, cleanUpAndGetTime(store), defaultLoader));
+    }
+
+    /**
+     * Retrieves several items at once. Equivalent to calling {@link #getItem(String)} for each key, but the
+     * thread's store is resolved, the clock read and expired entries reclaimed only once for the batch.
+     *
+     * @param keys Keys to look up.
+     * @param <V> Expected value type.
+     * @return The keys that were found, in iteration order of {@code keys}, with their values; missing and
+     *         expired keys are absent.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Map<String, V> getAll(Collection<String> keys) {
+        CacheStore store = store();
+        long now = cleanUpAndGetTime(store);
+        Map<String, V> found = new LinkedHashMap<>(Math.max(16, (int) (keys.size() / 0.75f) + 1));
+        for (String key : keys) {
+            Object value = read(store, key, now, defaultLoader);
+            if (value != null) {
+                found.put(key, (V) value);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Retrieves several items at once, loading all the missing ones with a single {@code loader} call.
+     * Like {@link #getAll(Collection)}, the thread's store and the clock are resolved once for the batch.
+     * <pre>{@code
+     * Map<String, User> users = cache.getAll(userIds, missing -> userRepository.findAllById(missing));
+     * }</pre>
+     *
+     * @param keys Keys to look up.
+     * @param loader Loads every key that was not found or has expired, in one request.
+     * @param <V> Expected value type.
+     * @return The keys that were found or loaded, in iteration order of {@code keys}, with their values.
+     * @throws IllegalArgumentException if the handler's {@link Weigher} returns a negative weight.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Map<String, V> getAll(Collection<String> keys, BatchLoader<? extends V> loader) {
+        Objects.requireNonNull(loader, "loader");
+        CacheStore store = store();
+        long now = cleanUpAndGetTime(store);
+        Map<String, Object> values = new LinkedHashMap<>(Math.max(16, (int) (keys.size() / 0.75f) + 1));
+        Set<String> missing = new LinkedHashSet<>();
+        for (String key : keys) {
+            Object value = read(store, key, now, defaultLoader);
+            if (value != null) {
+                values.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return (Map<String, V>) values;
+        }
+        Map<String, ? extends V> loaded = loadAll(statsFor(store), missing, loader);
+        Map<String, V> found = new LinkedHashMap<>(Math.max(16, (int) (keys.size() / 0.75f) + 1));
+        for (String key : keys) {
+            Object value = values.get(key);
+            if (value == null && missing.contains(key)) {
+                value = loaded.get(key);
+                if (value != null) {
+                    write(store, key, value, now);
+                    values.put(key, value); // Repeated keys are loaded and written once
+                }
+            }
+            if (value != null) {
+                found.put(key, (V) value);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Retrieves an item, or queues it to be loaded by the handler's {@link Options#batchLoader(BatchLoader)}
+     * together with this thread's other misses, as configured by {@link Options#batchWindow(int, long, TimeUnit)}.
+     * Data-loader style: render code can request every key it needs, then let them load in one round-trip.
+     * <pre>{@code
+     * List<CompletableFuture<User>> users = ids.stream().map(cache::<User>getOrLoadAsync).collect(toList());
+     * cache.dispatchLoads(); // or let the batch window fill up
+     * }</pre>
+     * Batches are loaded on the thread that dispatches them, and their values cached in that thread's store.
+     * A batch whose {@code maxDelay} runs out before the thread calls again, or whose thread terminates, is
+     * sent by a background dispatcher instead and loaded on the {@link Options#batchExecutor(Executor)}; in
+     * thread-local mode its values are then cached on the thread's next {@code getOrLoadAsync} or
+     * {@link #dispatchLoads()} call.
+     * <p>
+     * Waiting for the future on the thread that queued it ({@code join()}, {@code get()}, also on futures
+     * derived with {@code thenApply} and the like) dispatches that thread's batch first, so it does not wait
+     * for the window to fill. {@code CompletableFuture.allOf(...)} and other combinators over several
+     * futures do not; call {@link #dispatchLoads()} before waiting on them, or the wait can last until
+     * {@code maxDelay}, or forever if the window has none.
+     *
+     * @param key Item's key.
+     * @param <V> Expected value type.
+     * @return A future with the cached value, or one completed (with null if the loader had no value)
+     *         when the key's batch is loaded; failed if the batch loader throws.
+     * @throws IllegalStateException if the handler has no batch loader.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> CompletableFuture<V> getOrLoadAsync(String key) {
+        if (batchLoader == null) {
+            throw new IllegalStateException("No batch loader; use Options.batchLoader(...).");
+        }
+        CacheStore store = store();
+        long now = cleanUpAndGetTime(store);
+        PendingLoads pending = pendingLoads.get();
+        cacheHandedBack(store, pending, now);
+        if (maxBatchDelayNanos > 0 && pending.isOverdue(maxBatchDelayNanos)) {
+            dispatch(store, pending, now);
+        }
+        Object value = read(store, key, now, defaultLoader);
+        if (value != null) {
+            return CompletableFuture.completedFuture((V) value);
+        }
+        CompletableFuture<Object> future = pending.add(key);
+        if (pending.size() >= maxBatchSize) {
+            dispatch(store, pending, now);
+        }
+        return (CompletableFuture<V>) future;
+    }
+
+    /**
+     * Loads this thread's queued {@link #getOrLoadAsync(String)} misses now, in one batch loader call.
+     * Does nothing if none are pending.
+     */
+    public void dispatchLoads() {
+        if (pendingLoads == null) {
+            return;
+        }
+        CacheStore store = store();
+        long now = cleanUpAndGetTime(store);
+        PendingLoads pending = pendingLoads.get();
+        cacheHandedBack(store, pending, now);
+        dispatch(store, pending, now);
+    }
+
+    private void dispatch(CacheStore store, PendingLoads pending, long now) {
+        if (pending.size() == 0) {
+            return;
+        }
+        Map<String, CompletableFuture<Object>> batch = pending.drain();
+        Map<String, ?> loaded = loadBatch(statsFor(store), batch);
+        if (loaded == null) {
+            return;
+        }
+        // Cache everything before completing futures, whose callbacks may read the cache.
+        for (String key : batch.keySet()) {
+            Object value = loaded.get(key);
+            if (value != null) {
+                write(store, key, value, now);
+            }
+        }
+        batch.forEach((key, future) -> future.complete(loaded.get(key)));
+    }
+
+    /** Creates and registers the calling thread's queue of batched misses. */
+    private PendingLoads newPendingLoads() {
+        PendingLoads pending = new PendingLoads(this::dispatchLoads);
+        if (batchQueues != null) {
+            batchQueues.add(pending);
+        }
+        return pending;
+    }
+
+    /**
+     * Sends the batches that have waited {@code maxDelay}, and those of terminated threads, to the
+     * {@link #batchExecutor}, and forgets the queues of terminated threads. Called periodically by the
+     * {@link BatchDispatcher}, whose shared thread must not run the loader itself.
+     */
+    void dispatchOverdueLoads() {
+        for (Iterator<PendingLoads> it = batchQueues.iterator(); it.hasNext(); ) {
+            PendingLoads pending = it.next();
+            boolean ownerAlive = pending.isOwnerAlive();
+            if (!ownerAlive) {
+                it.remove();
+            }
+            if (ownerAlive ? (maxBatchDelayNanos > 0 && pending.isOverdue(maxBatchDelayNanos)) : pending.size() > 0) {
+                boolean handBack = ownerAlive && sharedStore == null;
+                Map<String, CompletableFuture<Object>> batch = handBack ? pending.drainForHandBack() : pending.drain();
+                if (batch.isEmpty()) {
+                    continue; // The owner dispatched it meanwhile
+                }
+                try {
+                    batchExecutor.execute(() -> loadFor(pending, batch, handBack));
+                } catch (RuntimeException e) {
+                    if (handBack) {
+                        pending.handBack(batch.keySet(), null);
+                    }
+                    batch.values().forEach(future -> future.completeExceptionally(e));
+                }
+            }
+        }
+    }
+
     /**
-     * An entry in the cache, storing the value and its expiration time.
-     * @param <V> Value type.
+     * Loads another thread's queued misses on the {@link #batchExecutor}. Values go into the shared store,
+     * or are handed back for the owner to cache in its own store; a dead owner's are only returned.
      */
-    private static class CacheEntry<V> {
-        final V value;
-        final long expirationTimeMillis; // 0 or less means no TTL
+    private void loadFor(PendingLoads pending, Map<String, CompletableFuture<Object>> batch, boolean handBack) {
+        StatsCounter stats = (threadStats == null) ? null
+                : (sharedStore != null) ? sharedModeStats.get() : batchExecutorStats.get();
+        Map<String, ?> loaded = loadBatch(stats, batch);
+        if (handBack) {
+            pending.handBack(batch.keySet(), loaded);
+        }
+        if (loaded == null) {
+            return;
+        }
+        if (sharedStore != null) {
+            long now = cleanUpAndGetTime(sharedStore);
+            for (String key : batch.keySet()) {
+                Object value = loaded.get(key);
+                if (value != null) {
+                    write(sharedStore, key, value, now);
+                }
+            }
+        }
+        batch.forEach((key, future) -> future.complete(loaded.get(key)));
+    }
 
-        /**
-         * Creates a cache entry.
-         * @param value Value to cache.
-         * @param ttlMillis TTL in milliseconds (0 or less for no TTL).
-         */
-        CacheEntry(V value, long ttlMillis) {
-            this.value = value;
-            this.expirationTimeMillis = (ttlMillis > 0) ? System.currentTimeMillis() + ttlMillis : 0;
+    /**
+     * Runs the batch loader for the keys of {@code batch}.
+     * @return The loaded values, or null if the loader failed, in which case the futures have been failed.
+     */
+    private Map<String, ?> loadBatch(StatsCounter stats, Map<String, CompletableFuture<Object>> batch) {
+        try {
+            return loadAll(stats, batch.keySet(), batchLoader);
+        } catch (RuntimeException | Error e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+            return null;
         }
+    }
 
-        /**
-         * Checks if expired.
-         * @return True if expired, false otherwise (including if no TTL).
-         */
-        boolean isExpired() {
-            return expirationTimeMillis > 0 && System.currentTimeMillis() > expirationTimeMillis;
+    /** Caches the values the {@link BatchDispatcher} loaded for this thread since its last call. */
+    private void cacheHandedBack(CacheStore store, PendingLoads pending, long now) {
+        Map<String, Object> values = pending.takeHandedBack();
+        if (values != null) {
+            values.forEach((key, value) -> write(store, key, value, now));
         }
+    }
 
-        V getValue() {
-            return value;
+    /**
+     * Adds several items at once. Equivalent to calling {@link #addItem(String, Object)} for each entry, but
+     * the thread's store is resolved, the clock read and expired entries reclaimed only once for the batch.
+     *
+     * @param items Items to add, in the order they should be inserted.
+     * @throws IllegalArgumentException if the handler's {@link Weigher} returns a negative weight.
+     */
+    public void putAll(Map<String, ?> items) {
+        CacheStore store = store();
+        long now = cleanUpAndGetTime(store);
+        for (Map.Entry<String, ?> item : items.entrySet()) {
+            write(store, item.getKey(), item.getValue(), now);
         }
     }
 
     /**
-     * Core LRU cache for each thread, extending {@link LinkedHashMap}.
-     * Not thread-safe on its own; {@link LocalLruCache} ensures per-thread instances.
-     * Stores {@link CacheEntry} objects.
+     * Retrieves an item, computing and caching it with {@code loader} if it is not found or has expired.
+     * Replaces the {@code getItem} / null check / {@code addItem} pattern: the thread's store is resolved,
+     * the clock read and expired entries reclaimed only once for the whole call.
+     * <pre>{@code
+     * Profile profile = cache.getOrLoad("profile_" + userId, key -> profileService.fetch(userId));
+     * }</pre>
+     * A loaded value's TTL counts from the lookup that missed, so it expires at the same time whether it
+     * was loaded here or added with {@code addItem} at that moment.
+     *
+     * @param key Item's key.
+     * @param loader Computes the value on a miss; it may use this handler itself. With
+     *               {@link Options#singleFlightLoading()}, a thread may instead wait for another
+     *               thread's load of the same key.
+     * @param <V> Expected value type.
+     * @return The cached or loaded value, or null if the loader returned null.
+     * @throws IllegalArgumentException if the handler's {@link Weigher} returns a negative weight.
      */
-    @SuppressWarnings("rawtypes") // Suppress warning for using raw CacheEntry type in LinkedHashMap
-    private static class SimpleLruCache extends LinkedHashMap<String, CacheEntry> {
-        private final int capacity;
+    @SuppressWarnings("unchecked")
+    public <V> V getOrLoad(String key, CacheLoader<? extends V> loader) {
+        Objects.requireNonNull(loader, "loader");
+        CacheStore store = store();
+        long now = cleanUpAndGetTime(store);
+        Object value = read(store, key, now, loader);
+        if (value == null) {
+            value = loadAndCache(store, key, loader, now);
+        }
+        return (V) value;
+    }
 
-        /**
-         * Creates a SimpleLruCache.
-         * @param capacity Max entries. Must be positive.
-         */
-        SimpleLruCache(int capacity) {
-            // true for access-order, which is essential for LRU behavior
-            super(capacity, 0.75f, true);
-            this.capacity = capacity;
+    /**
+     * Retrieves an item, computing and caching it with the handler's {@link Options#loader(CacheLoader)}
+     * if it is not found or has expired. See {@link #getOrLoad(String, CacheLoader)}.
+     *
+     * @param key Item's key.
+     * @param <V> Expected value type.
+     * @return The cached or loaded value, or null if the loader returned null.
+     * @throws IllegalStateException if the handler has no default loader.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V getOrLoad(String key) {
+        if (defaultLoader == null) {
+            throw new IllegalStateException("No default loader; use Options.loader(...) or getOrLoad(key, loader).");
         }
+        return getOrLoad(key, (CacheLoader<V>) defaultLoader);
+    }
 
-        /**
-         * Called after put: remove eldest if size > capacity.
-         */
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
-            return size() > capacity;
+    /**
+     * Runs {@code loader} for a miss (or joins another thread's load of the key, with single-flight
+     * loading), timing it if the handler records stats, and caches the value.
+     * @return The loaded value, possibly null.
+     */
+    private Object loadAndCache(CacheStore store, String key, CacheLoader<?> loader, long now) {
+        StatsCounter stats = statsFor(store);
+        long start = (stats != null) ? System.nanoTime() : 0;
+        CacheEvents.SlowLoad event = CacheEvents.beginLoad();
+        SingleFlight.InFlightLoad flight = null;
+        Object value = null;
+        try {
+            if (singleFlight != null) {
+                flight = singleFlight.load(key, loader);
+                value = flight.value();
+            } else {
+                value = loader.load(key);
+            }
+        } finally {
+            if (stats != null) {
+                stats.recordLoad(value != null, System.nanoTime() - start);
+            }
+            CacheEvents.endLoad(event, name, key, 1, value != null);
+        }
+        if (value != null && (flight == null || !flight.isInvalidated())) {
+            // Refresh-ahead dates the value from the end of the load: a reload that finished earlier is older.
+            write(store, key, value, now, (refreshAhead != null) ? ticker.currentTimeMillis() : now);
+            if (flight != null && flight.isInvalidated()) {
+                store.removeEntry(key); // Invalidated while we wrote it; see detachLoads
+            }
         }
+        return value;
+    }
 
-        // These methods operate on the LinkedHashMap instance. Since each thread has its
-        // own SimpleLruCache (and thus its own LinkedHashMap) via ThreadLocal,
-        // external synchronization is not needed for thread safety here.
-        // LinkedHashMap itself is not thread-safe if shared, but it's not shared across threads here.
-        public CacheEntry<?> getEntry(String key) {
-            return super.get(key);
+    /**
+     * Runs {@code loader} once for a batch of misses, timing it if the handler records stats.
+     */
+    private <V> Map<String, ? extends V> loadAll(StatsCounter stats, Set<String> keys, BatchLoader<? extends V> loader) {
+        long start = (stats != null) ? System.nanoTime() : 0;
+        CacheEvents.SlowLoad event = CacheEvents.beginLoad();
+        boolean loaded = false;
+        try {
+            Map<String, ? extends V> values = loader.loadAll(Collections.unmodifiableSet(keys));
+            loaded = true;
+            return values;
+        } finally {
+            if (stats != null) {
+                stats.recordLoad(loaded, System.nanoTime() - start);
+            }
+            CacheEvents.endLoad(event, name, null, keys.size(), loaded);
         }
+    }
+
+    /**
+     * Looks a key up in the calling thread's store, after {@link #cleanUpAndGetTime(CacheStore)}.
+     * @param loader Reloads the entry if it is due for refresh-ahead; null to never refresh.
+     * @return The value as {@code getItem} returns it, or null if not found/expired.
+     */
+    private Object read(CacheStore store, String key, long now, CacheLoader<?> loader) {
+        return countLookup(store, lookup(store, key, now, loader));
+    }
 
-        public void putEntry(String key, CacheEntry<?> value) {
-            super.put(key, value);
+    /**
+     * Records the time since {@code start} in the calling thread's {@code getItem} histogram, if the
+     * handler times operations.
+     * @return {@code value}.
+     */
+    private Object timeGet(CacheStore store, long start, Object value) {
+        if (recordOperationLatency) {
+            statsFor(store).getLatency.record(System.nanoTime() - start);
         }
+        return value;
+    }
 
-        public void removeEntry(String key) {
-            super.remove(key);
+    /**
+     * Counts a lookup's result as a hit or a miss, if the handler records stats.
+     * @return {@code value}.
+     */
+    private Object countLookup(CacheStore store, Object value) {
+        StatsCounter stats = statsFor(store);
+        if (stats != null) {
+            if (value != null) {
+                stats.hits++;
+            } else {
+                stats.misses++;
+            }
         }
+        return value;
     }
 
-    /** Holds each thread's {@link SimpleLruCache}. Transient as ThreadLocal isn't typically serializable. */
-    private transient ThreadLocal<SimpleLruCache> threadLocalCache;
+    private Object lookup(CacheStore store, String key, long now, CacheLoader<?> loader) {
+        if (arrayBacked) {
+            return store.getValue(key, now);
+        }
+        CacheEntry<?> entry = store.getEntry(key);
+        if (entry != null && entry.isExpired(now)) {
+            store.expireEntry(key, entry); // Eagerly remove expired entry upon access
+            entry = null;
+        }
+        if (entry == null) {
+            if (overflowTier == null) {
+                return null;
+            }
+            entry = promoteFromOverflow(store, key, now);
+            if (entry == null) {
+                return null;
+            }
+        }
+        if (refreshAhead != null && loader != null && refreshAhead.isDue(entry, now)) {
+            RefreshAhead.Reload reload = refreshAhead.poll(key, entry, loader);
+            if (reload != null) {
+                // A newer value was reloaded in the background; adopt it with the TTL it was loaded with.
+                CacheEntry<?> refreshed = write(store, key, reload.value, reload.loadedAtMillis);
+                if (reload.invalidated) {
+                    store.removeEntry(key); // Invalidated while we adopted it: serve it once, but don't keep it
+                    refreshed = null;
+                } else if (sharedStore != null) {
+                    refreshAhead.remove(key, reload); // Now in the one store that needed it
+                }
+                if (refreshed == null) {
+                    return reload.value;
+                }
+                entry = refreshed;
+            }
+        }
+        Object value = entry.getValue();
+        if (value instanceof SlabAllocator.OffHeapValue) {
+            SlabAllocator.OffHeapValue offHeapValue = (SlabAllocator.OffHeapValue) value;
+            // Either is null if the entry was freed concurrently (shared mode); treat that as a miss.
+            value = (offHeapAccess == OffHeapAccess.COPY) ? offHeapValue.copy() : offHeapValue.view();
+        }
+        return value;
+    }
 
+    /**
+     * Adds a value to the calling thread's store, after {@link #cleanUpAndGetTime(CacheStore)}.
+     * @param now Time the entry's TTL counts from.
+     * @return The stored entry, or null if the value was not cached or the store keeps no entry objects.
+     */
+    private CacheEntry<?> write(CacheStore store, String key, Object value, long now) {
+        return write(store, key, value, now, now);
+    }
 
     /**
-     * Creates a {@code LocalLruCache} handler with specified global defaults for capacity and TTL.
-     * <p>
-     * Threads using this handler get a local cache with these settings.
-     * Example:
-     * <pre>{@code
-     * LocalLruCache handler1 = LocalLruCache.initialize(100, 60); // 100 items, 60s TTL
-     * LocalLruCache handler2 = LocalLruCache.initialize(50, 0);   // 50 items, no TTL
-     * }</pre>
-     * This handler is a configuration snapshot; data is in thread-local stores.
-     *
-     * @param capacity Max items per thread's cache (must be positive).
-     * @param ttlSeconds TTL for entries in seconds (0 or less for infinite TTL).
-     * @return A configured {@code LocalLruCache} handler.
-     * @throws IllegalArgumentException if capacity is not positive.
+     * Adds a value that was loaded at {@code loadedAtMillis}, later than {@code now}, which its TTL counts from.
      */
-    public static LocalLruCache initialize(int capacity, long ttlSeconds) {
-        if (capacity <= 0) {
-            throw new IllegalArgumentException("Capacity must be positive.");
+    private CacheEntry<?> write(CacheStore store, String key, Object value, long now, long loadedAtMillis) {
+        // The instanceTtlMillis for this specific handler is used when creating the entry.
+        if (arrayBacked) {
+            recordEvictions(store.putValue(key, value, expirationFrom(now)));
+            return null;
         }
-        // Update global defaults; new LocalLruCache handlers will use these.
-        globalDefaultCapacity = capacity;
-        globalDefaultTtlMillis = (ttlSeconds > 0) ? ttlSeconds * 1000 : 0;
+        if (overflowTier != null) {
+            overflowTier.invalidate(key); // A spilled older value must not be promoted over this one
+        }
+        int weight = 1;
+        if (weigher != null) {
+            weight = weigher.weigh(key, value);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weigher returned a negative weight for key: " + key);
+            }
+            if (weight > maximumEntryWeight) {
+                store.removeEntry(key); // Too heavy to ever fit; don't flush the store trying.
+                return null;
+            }
+        }
+        Object stored = (offHeap != null && value instanceof byte[]) ? offHeap.store((byte[]) value) : value;
+        CacheEntry<?> entry = new CacheEntry<>(key, stored, this.instanceTtlMillis, now, weight, loadedAtMillis);
+        recordEvictions(store.putEntry(key, entry));
+        return entry;
+    }
 
-        // Return a new handler instance that captures the current global settings.
-        return new LocalLruCache(globalDefaultCapacity, globalDefaultTtlMillis);
+    /** @return Absolute expiration time of a value written at {@code now} to an array-backed store, or 0. */
+    private long expirationFrom(long now) {
+        return (this.instanceTtlMillis > 0) ? now + this.instanceTtlMillis : 0;
+    }
+
+    /** Reports the evictions a write caused to Flight Recorder, while a recording is running. */
+    private void recordEvictions(int evicted) {
+        if (evicted > 0 && CacheEvents.isRecording()) {
+            CacheEvents.evicted(evictionTally.get(), evicted);
+        }
     }
 
     /**
-     * Private constructor. Use {@link #initialize(int, long)}.
-     * Captures global capacity/TTL at its creation for this handler instance.
-     * These are then used for this handler's {@link ThreadLocal} caches.
+     * Adds an item under a reusable {@link CacheKey} handle; equivalent to {@code addItem(key.toString(), value)}
+     * without rebuilding the key. Only with {@link Options#arrayBackedStorage()} does the store also probe
+     * with the handle's precomputed hash; other stores hash its {@code String}, whose hash code is cached.
      *
-     * @param capacity Capacity for this handler's thread-local caches.
-     * @param ttlMillis TTL (ms) for this handler's thread-local caches.
+     * @param key Item's key handle.
+     * @param value Item's value.
+     * @param <V> Value type.
+     * @throws IllegalArgumentException if the handler's {@link Weigher} returns a negative weight.
      */
-    private LocalLruCache(int capacity, long ttlMillis) {
-        this.instanceCapacity = capacity;
-        this.instanceTtlMillis = ttlMillis;
+    public <V> void addItem(CacheKey key, V value) {
+        if (!arrayBacked) {
+            addItem(key.key, value);
+            return;
+        }
+        long start = recordOperationLatency ? System.nanoTime() : 0;
+        CacheStore store = store();
+        recordEvictions(store.putValue(key, value, expirationFrom(cleanUpAndGetTime(store))));
+        if (recordOperationLatency) {
+            statsFor(store).addLatency.record(System.nanoTime() - start);
+        }
+    }
 
-        // Each thread using THIS handler instance gets its own SimpleLruCache,
-        // configured with this handler's captured capacity and TTL settings.
-        this.threadLocalCache = ThreadLocal.withInitial(() -> new SimpleLruCache(this.instanceCapacity));
+    /**
+     * Retrieves an item by a reusable {@link CacheKey} handle; equivalent to {@code getItem(key.toString())}
+     * without rebuilding the key. Only with {@link Options#arrayBackedStorage()} does the store also probe
+     * with the handle's precomputed hash, matching entries added through the same handle by reference.
+     *
+     * @param key Item's key handle.
+     * @param <V> Expected value type (casting is attempted by the JVM on assignment).
+     * @return The value, or null if not found/expired.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V getItem(CacheKey key) {
+        if (!arrayBacked) {
+            return getItem(key.key);
+        }
+        long start = recordOperationLatency ? System.nanoTime() : 0;
+        CacheStore store = store();
+        return (V) timeGet(store, start, countLookup(store, store.getValue(key, cleanUpAndGetTime(store))));
     }
 
     /**
-     * Adds an item to the current thread's local cache.
-     * Uses the TTL policy of this {@code LocalLruCache} handler.
-     * Overwrites existing items with the same key.
-     * <p>
-     * This generic method can be used for any type, including byte arrays or custom objects.
-     * For example:
-     * <pre>{@code
-     * cache.addItem("myBytes", new byte[]{1, 2, 3});
-     * cache.addItem("myObject", new MyCustomObject());
-     * }</pre>
+     * Retrieves an item by a key held in any {@link CharSequence}, such as a reused {@link StringBuilder}.
+     * With {@link Options#arrayBackedStorage()} the characters are hashed and compared against stored keys
+     * in place; other stores look the key up by {@code key.toString()}.
      *
      * @param key Item's key.
-     * @param value Item's value.
-     * @param <V> Value type.
+     * @param <V> Expected value type (casting is attempted by the JVM on assignment).
+     * @return The value, or null if not found/expired.
      */
-    public <V> void addItem(String key, V value) {
-        // The instanceTtlMillis for this specific handler is used when creating the CacheEntry.
-        CacheEntry<V> entry = new CacheEntry<>(value, this.instanceTtlMillis);
-        threadLocalCache.get().putEntry(key, entry);
+    public <V> V getItem(CharSequence key) {
+        return getItem(KeyProbe.of(key));
     }
 
     /**
-     * Retrieves an item from the current thread's local cache.
-     * Returns null if not found or if the item has expired (and removes it).
-     * <p>
-     * The caller is responsible for casting the returned value to the expected type.
-     * For example:
-     * <pre>{@code
-     * String strVal = cache.getItem("stringKey"); // Implicit cast may work for Object to String
-     * byte[] bytesVal = (byte[]) cache.getItem("byteKey");
-     * MyCustomObject objVal = (MyCustomObject) cache.getItem("objectKey");
-     * }</pre>
+     * Retrieves an item by a key given as UTF-8 bytes, e.g. straight from a network buffer; it matches the
+     * {@code String} key with the same text. With {@link Options#arrayBackedStorage()} an ASCII key is
+     * hashed and compared against stored keys in place, without decoding it; other keys and stores decode
+     * the bytes into a {@code String} first.
      *
-     * @param key Item's key.
+     * @param key Array holding the key.
+     * @param offset Index of the key's first byte.
+     * @param length Number of bytes in the key.
+     * @param <V> Expected value type (casting is attempted by the JVM on assignment).
+     * @return The value, or null if not found/expired.
+     * @throws IndexOutOfBoundsException if the range is outside {@code key}.
+     */
+    public <V> V getItem(byte[] key, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, key.length);
+        return getItem(KeyProbe.of(key, offset, length));
+    }
+
+    /**
+     * Retrieves an item by a key given as the UTF-8 bytes between the buffer's position and limit, like
+     * {@link #getItem(byte[], int, int)}. The buffer's position is not changed.
+     *
+     * @param key Buffer holding the key; heap or direct.
      * @param <V> Expected value type (casting is attempted by the JVM on assignment).
      * @return The value, or null if not found/expired.
      */
+    public <V> V getItem(ByteBuffer key) {
+        return getItem(KeyProbe.of(key));
+    }
+
     @SuppressWarnings("unchecked")
-    public <V> V getItem(String key) {
-        CacheEntry<?> entry = threadLocalCache.get().getEntry(key);
-        if (entry == null) {
-            return null;
+    private <V> V getItem(KeyProbe probe) {
+        if (!arrayBacked) {
+            String key = probe.toString();
+            probe.release();
+            return getItem(key);
         }
-        if (entry.isExpired()) {
-            threadLocalCache.get().removeEntry(key); // Eagerly remove expired entry upon access
-            return null;
+        try {
+            long start = recordOperationLatency ? System.nanoTime() : 0;
+            CacheStore store = store();
+            return (V) timeGet(store, start, countLookup(store, store.getValue(probe, cleanUpAndGetTime(store))));
+        } finally {
+            probe.release();
         }
-        // Caller is responsible for knowing the type and casting appropriately.
-        return (V) entry.getValue();
+    }
+
+    /**
+     * Reads the clock and reclaims expired entries from {@code store}, for TTL-enabled handlers.
+     * @return The current time, or 0 without a TTL (the clock is then never read).
+     */
+    private long cleanUpAndGetTime(CacheStore store) {
+        if (this.instanceTtlMillis <= 0) {
+            return 0;
+        }
+        long now = ticker.currentTimeMillis();
+        store.cleanUp(now);
+        return now;
     }
 
     // Note: Specific helper methods like addItemBytes, getItemBytes, addStruct, getStruct
@@ -307,6 +2206,40 @@ public class LocalLruCache {
         ttlCache.addItem("ttl_item3", "new_item_post_sleep");
         System.out.println("After sleep, new item: ttl_item3 = " + ttlCache.getItem("ttl_item3"));
 
+        System.out.println("\n--- TTL With Manual Ticker Test (TTL 60s, no sleeping) ---");
+        long[] fakeNow = {1_000_000L};
+        LocalLruCache tickerCache = LocalLruCache.initialize(5, 60, new Options().ticker(() -> fakeNow[0]));
+        tickerCache.addItem("ticked", "value");
+        fakeNow[0] += 59_000;
+        System.out.println("After 59s: ticked = " + tickerCache.getItem("ticked"));
+        assert "value".equals(tickerCache.getItem("ticked")) : "Entry should still be live before its TTL.";
+        fakeNow[0] += 2_000;
+        System.out.println("After 61s: ticked = " + tickerCache.getItem("ticked"));
+        assert tickerCache.getItem("ticked") == null : "Entry should expire once the ticker passes its TTL.";
+        tickerCache.addItem("boundary", "value");
+        fakeNow[0] += 60_000; // Exactly the expiration time: the timer wheel and lookups must agree it is live
+        assert "value".equals(tickerCache.getItem("boundary")) : "An entry should be live at its expiration time.";
+        fakeNow[0] += 1;
+        assert tickerCache.getItem("boundary") == null : "An entry should expire just after its expiration time.";
+        Ticker.CachedTicker coarseClock = Ticker.cached(7, TimeUnit.MILLISECONDS);
+        Ticker.CachedTicker sameClock = Ticker.cached(7, TimeUnit.MILLISECONDS);
+        long tickerThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("LocalLruCache-ticker-7ms")).count();
+        System.out.println("Updater threads for two 7ms cached tickers: " + tickerThreads);
+        assert tickerThreads == 1 : "Cached tickers of one resolution should share their updater.";
+        coarseClock.close();
+        coarseClock.close(); // Closing twice must not release the other ticker's share
+        long sharedStart = sameClock.currentTimeMillis();
+        try {
+            for (int i = 0; i < 100 && sameClock.currentTimeMillis() == sharedStart; i++) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assert sameClock.currentTimeMillis() > sharedStart : "An open ticker should keep advancing.";
+        sameClock.close();
+
         System.out.println("\n--- Byte Array Caching Test (No TTL) ---");
         LocalLruCache byteCacheHandler = LocalLruCache.initialize(3, 0); // Handler with no TTL for this test
         byte[] bytes1 = "TestBytes".getBytes(StandardCharsets.UTF_8);
@@ -341,6 +2274,659 @@ public class LocalLruCache {
             System.out.println("Casting String to byte[] correctly threw ClassCastException.");
         }
 
+        System.out.println("\n--- Shared Mode Test (Capacity 4, No TTL) ---");
+        LocalLruCache sharedModeHandler = LocalLruCache.initialize(4, 0, new Options().mode(Mode.SHARED));
+        Thread writer = new Thread(() -> sharedModeHandler.addItem("shared_key", "val_from_writer"), "Thread-Writer");
+        writer.start();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        Object sharedValue = sharedModeHandler.getItem("shared_key");
+        System.out.println(Thread.currentThread().getName() + " get('shared_key') written by Thread-Writer: " + sharedValue);
+        assert "val_from_writer".equals(sharedValue) : "Shared mode should expose entries across threads.";
+
+        System.out.println("\n--- W-TinyLFU Policy Test (Capacity 100, No TTL) ---");
+        LocalLruCache tinyLfuHandler = LocalLruCache.initialize(100, 0, new Options().policy(Policy.WINDOW_TINY_LFU));
+        for (int i = 0; i < 100; i++) {
+            tinyLfuHandler.addItem("hot_" + i, i);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                tinyLfuHandler.getItem("hot_" + i);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            tinyLfuHandler.addItem("one_hit_" + i, i); // A burst of keys that are never read again
+        }
+        int hotSurvivors = 0;
+        for (int i = 0; i < 100; i++) {
+            if (tinyLfuHandler.getItem("hot_" + i) != null) {
+                hotSurvivors++;
+            }
+        }
+        System.out.println("Hot keys surviving a burst of 1000 one-hit wonders: " + hotSurvivors + "/100");
+        assert hotSurvivors > 90 : "W-TinyLFU should keep frequently used keys through a one-hit burst.";
+        // Removing a node the order already evicted, e.g. through a stale reference, must be a no-op.
+        AccessOrder tinyLfuOrder = AccessOrder.create(Policy.WINDOW_TINY_LFU, 10);
+        AccessOrder.Node[] orderNodes = {new AccessOrder.Node("w1", null), new AccessOrder.Node("w2", null),
+                new AccessOrder.Node("w3", null)};
+        for (AccessOrder.Node node : orderNodes) {
+            tinyLfuOrder.recordInsert(node);
+        }
+        AccessOrder.Node evictedNode = tinyLfuOrder.selectVictim(); // w2 loses admission against w1
+        tinyLfuOrder.recordAccess(orderNodes[0]); // w1: probation -> protected
+        tinyLfuOrder.recordRemoval(evictedNode);
+        AccessOrder.Node nextVictim = tinyLfuOrder.selectVictim();
+        AccessOrder.Node lastVictim = tinyLfuOrder.selectVictim();
+        System.out.println("Evicted " + evictedNode.key + ", removed it again, then evicted "
+                + (nextVictim != null ? nextVictim.key : null) + " and " + (lastVictim != null ? lastVictim.key : null));
+        assert evictedNode == orderNodes[1] && nextVictim == orderNodes[0] && lastVictim == orderNodes[2]
+                && tinyLfuOrder.selectVictim() == null : "Removing an evicted node should leave the other queues intact.";
+
+        System.out.println("\n--- Weight Bound Test (Max 1000 bytes, No TTL) ---");
+        LocalLruCache weighedHandler = LocalLruCache.initialize(100, 0, new Options().maximumWeight(1000));
+        weighedHandler.addItem("bytes_400_a", new byte[400]);
+        weighedHandler.addItem("bytes_400_b", new byte[400]);
+        weighedHandler.addItem("bytes_400_c", new byte[400]); // 1200 bytes > 1000: "bytes_400_a" is evicted
+        weighedHandler.addItem("bytes_2000", new byte[2000]); // Heavier than the whole bound: not cached
+        System.out.println("bytes_400_a: " + (weighedHandler.getItem("bytes_400_a") != null ? "present" : "evicted"));
+        System.out.println("bytes_400_c: " + (weighedHandler.getItem("bytes_400_c") != null ? "present" : "evicted"));
+        System.out.println("bytes_2000: " + (weighedHandler.getItem("bytes_2000") != null ? "present" : "not cached"));
+        assert weighedHandler.getItem("bytes_400_a") == null : "Eldest entry should be evicted by weight.";
+        assert weighedHandler.getItem("bytes_400_b") != null && weighedHandler.getItem("bytes_400_c") != null;
+        assert weighedHandler.getItem("bytes_2000") == null : "Items heavier than the bound should not be cached.";
+        LocalLruCache sharedWeighedHandler = LocalLruCache.initialize(40, 0,
+                new Options().mode(Mode.SHARED).maximumWeight(10_000)); // At least 2 segments of at most 5000
+        for (int i = 0; i < 20; i++) {
+            sharedWeighedHandler.addItem("bytes_10_" + i, new byte[10]);
+        }
+        sharedWeighedHandler.addItem("bytes_6000", new byte[6000]); // Under the total, over a segment's share
+        int smallKept = 0;
+        for (int i = 0; i < 20; i++) {
+            smallKept += (sharedWeighedHandler.getItem("bytes_10_" + i) != null) ? 1 : 0;
+        }
+        System.out.println("Shared bytes_6000: " + (sharedWeighedHandler.getItem("bytes_6000") != null ? "present" : "not cached")
+                + ", small entries kept: " + smallKept + "/20");
+        assert sharedWeighedHandler.getItem("bytes_6000") == null : "Items heavier than a segment's share should not be cached.";
+        assert smallKept == 20 : "Rejecting a heavy item should not flush its segment.";
+
+        System.out.println("\n--- Off-Heap Byte Array Test (Capacity 2, No TTL) ---");
+        LocalLruCache offHeapHandler = LocalLruCache.initialize(2, 0, new Options().offHeapBinaryValues(OffHeapAccess.COPY));
+        byte[] payload = "OffHeapPayload".getBytes(StandardCharsets.UTF_8);
+        offHeapHandler.addItem("offheap1", payload);
+        byte[] offHeapCopy = (byte[]) offHeapHandler.getItem("offheap1");
+        System.out.println("Retrieved off-heap copy: " + new String(offHeapCopy, StandardCharsets.UTF_8));
+        assert Arrays.equals(payload, offHeapCopy) && payload != offHeapCopy : "Off-heap read should return an equal copy.";
+        offHeapHandler.addItem("offheap2", new byte[]{1});
+        offHeapHandler.addItem("offheap3", new byte[]{2}); // Evicts "offheap1" and frees its chunk
+        assert offHeapHandler.offHeap.usedBytes() == 2 : "Evicted off-heap values should be freed.";
+        Thread offHeapWorker = new Thread(() -> offHeapHandler.addItem("worker", new byte[100]));
+        offHeapWorker.start();
+        try {
+            offHeapWorker.join();
+            assert offHeapHandler.offHeap.usedBytes() == 102;
+            offHeapWorker = null; // Its store is cleared once the thread is collected
+            for (int i = 0; i < 100 && offHeapHandler.offHeap.usedBytes() != 2; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.println("Off-heap bytes in use after a worker died: " + offHeapHandler.offHeap.usedBytes());
+        assert offHeapHandler.offHeap.usedBytes() == 2 : "A dead thread's off-heap values should be freed.";
+        // Two threads freeing the same values, as an eviction and a dead owner's release can: each chunk
+        // must go back on its free list once, or it would later be handed out twice.
+        SlabAllocator racedSlabs = new SlabAllocator();
+        SlabAllocator.OffHeapValue[] racedValues = new SlabAllocator.OffHeapValue[10_000];
+        for (int i = 0; i < racedValues.length; i++) {
+            racedValues[i] = racedSlabs.store(new byte[100]);
+        }
+        java.util.concurrent.CountDownLatch freeStart = new java.util.concurrent.CountDownLatch(1);
+        Runnable freeAll = () -> {
+            try {
+                freeStart.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (SlabAllocator.OffHeapValue value : racedValues) {
+                racedSlabs.free(value);
+            }
+        };
+        Thread[] racingFreers = new Thread[4];
+        for (int i = 0; i < racingFreers.length; i++) {
+            racingFreers[i] = new Thread(freeAll);
+            racingFreers[i].start();
+        }
+        freeStart.countDown();
+        try {
+            for (Thread racingFreer : racingFreers) {
+                racingFreer.join();
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        Set<Long> reusedChunks = new java.util.HashSet<>();
+        for (int i = 0; i < racedValues.length; i++) {
+            SlabAllocator.OffHeapValue value = racedSlabs.store(new byte[100]);
+            reusedChunks.add(((long) value.slabIndex << 32) | value.offset);
+        }
+        System.out.println("Distinct chunks after racing frees: " + reusedChunks.size() + "/" + racedValues.length);
+        assert reusedChunks.size() == racedValues.length : "A value freed twice should not be handed out twice.";
+
+        System.out.println("\n--- Overflow Tier Test (Capacity 2, No TTL) ---");
+        Path overflowFile;
+        Path sharedOverflowFile;
+        try {
+            overflowFile = java.nio.file.Files.createTempFile("locallru-overflow", ".bin");
+            overflowFile.toFile().deleteOnExit();
+            sharedOverflowFile = java.nio.file.Files.createTempFile("locallru-overflow", ".bin");
+            sharedOverflowFile.toFile().deleteOnExit();
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+        LocalLruCache overflowHandler = LocalLruCache.initialize(2, 0, new Options().overflowTier(overflowFile, 1 << 16));
+        overflowHandler.addItem("spill1", "first");
+        overflowHandler.addItem("spill2", new byte[]{7, 8});
+        overflowHandler.addItem("spill3", new MyStruct("Spilled", 1)); // Neither byte[] nor String: dropped
+        overflowHandler.addItem("spill4", "fourth"); // Evicts "spill2" and "spill1" into the file
+        Object promoted = overflowHandler.getItem("spill1"); // Promoted back, evicting "spill3"
+        System.out.println("spill1 from overflow tier: " + promoted);
+        assert "first".equals(promoted) : "Evicted entries should be served from the overflow tier.";
+        assert Arrays.equals(new byte[]{7, 8}, (byte[]) overflowHandler.getItem("spill2"));
+        assert overflowHandler.getItem("spill3") == null : "Only byte[] and String values should be spilled.";
+        LocalLruCache sharedOverflowHandler = LocalLruCache.initialize(1, 0, new Options().mode(Mode.SHARED)
+                .overflowTier(sharedOverflowFile, 1 << 16));
+        sharedOverflowHandler.addItem("spill5", "fifth");
+        sharedOverflowHandler.addItem("spill6", "sixth"); // Spills "spill5" after releasing the segment lock
+        assert "fifth".equals(sharedOverflowHandler.getItem("spill5")) : "Shared stores should spill evictions too.";
+
+        System.out.println("\n--- Long-Keyed Cache Test (Capacity 2, No TTL) ---");
+        LongLruCache longCache = LongLruCache.initialize(2, 0);
+        longCache.addItem(1001L, "user1001");
+        longCache.addItem(1002L, "user1002");
+        longCache.getItem(1001L);
+        longCache.addItem(1003L, "user1003"); // 1002 is the least recently used and is evicted
+        System.out.println("longCache.get(1001): " + longCache.getItem(1001L) + ", get(1002): " + longCache.getItem(1002L));
+        assert "user1001".equals(longCache.getItem(1001L)) && longCache.getItem(1002L) == null;
+
+        System.out.println("\n--- Array-Backed Storage Test (Capacity 2, TTL 60s) ---");
+        long[] arrayNow = {1_000_000L};
+        LocalLruCache arrayHandler = LocalLruCache.initialize(2, 60,
+                new Options().arrayBackedStorage().ticker(() -> arrayNow[0]));
+        arrayHandler.addItem("slot1", "v1");
+        arrayHandler.addItem("slot2", "v2");
+        arrayHandler.getItem("slot1");
+        arrayHandler.addItem("slot3", "v3"); // Recycles the slot of "slot2", the least recently used
+        System.out.println("slot1: " + arrayHandler.getItem("slot1") + ", slot2: " + arrayHandler.getItem("slot2"));
+        assert "v1".equals(arrayHandler.getItem("slot1")) && arrayHandler.getItem("slot2") == null;
+        arrayNow[0] += 61_000;
+        assert arrayHandler.getItem("slot3") == null : "Array-backed entries should expire after their TTL.";
+
+        System.out.println("\n--- CacheKey Handle Test ---");
+        CacheKey prefsKey = CacheKey.of("prefs_", 42);
+        cache1.addItem(prefsKey, "dark_mode");
+        System.out.println("get(CacheKey prefs_42): " + cache1.getItem(prefsKey) + ", get(\"prefs_42\"): " + cache1.getItem("prefs_42"));
+        assert "dark_mode".equals(cache1.getItem("prefs_42")) : "Handles and String keys should address the same entry.";
+        LocalLruCache handleArrayHandler = LocalLruCache.initialize(4, 0, new Options().arrayBackedStorage());
+        handleArrayHandler.addItem(prefsKey, "light_mode");
+        handleArrayHandler.addItem("prefs_7", "auto");
+        System.out.println("Array-backed get(CacheKey prefs_42): " + handleArrayHandler.getItem(prefsKey)
+                + ", get(CacheKey prefs_7): " + handleArrayHandler.getItem(CacheKey.of("prefs_", 7)));
+        assert "light_mode".equals(handleArrayHandler.getItem(prefsKey)) && "light_mode".equals(handleArrayHandler.getItem("prefs_42"));
+        assert "auto".equals(handleArrayHandler.getItem(CacheKey.of("prefs_", 7))) : "Handles should find String-keyed entries.";
+
+        System.out.println("\n--- Lookup Without A String Key Test ---");
+        arrayHandler.addItem("slot1", "v1");
+        byte[] request = "GET slot1 HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+        Object byBytes = arrayHandler.getItem(request, 4, 5);
+        Object byBuffer = arrayHandler.getItem(ByteBuffer.wrap(request, 4, 5));
+        Object byChars = arrayHandler.getItem(new StringBuilder("slot").append(1));
+        System.out.println("By byte[] slice: " + byBytes + ", by ByteBuffer: " + byBuffer + ", by CharSequence: " + byChars);
+        assert "v1".equals(byBytes) && "v1".equals(byBuffer) && "v1".equals(byChars);
+        assert "value3".equals(cache1.getItem(new StringBuilder("key3"))) : "Other stores should fall back to a String lookup.";
+        arrayHandler.addItem("caf\u00e9", "cr\u00e8me");
+        byte[] utf8Key = "caf\u00e9".getBytes(StandardCharsets.UTF_8);
+        System.out.println("By UTF-8 bytes: " + arrayHandler.getItem(utf8Key, 0, utf8Key.length));
+        assert "cr\u00e8me".equals(arrayHandler.getItem(utf8Key, 0, utf8Key.length)) : "Byte keys should be read as UTF-8.";
+        assert "cr\u00e8me".equals(arrayHandler.getItem(ByteBuffer.wrap(utf8Key))) && arrayHandler.getItem(request, 0, 5) == null;
+
+        System.out.println("\n--- getOrLoad Test (Capacity 5, TTL 60s) ---");
+        int[] loads = {0};
+        LocalLruCache loadingHandler = LocalLruCache.initialize(5, 60,
+                new Options().loader(key -> { loads[0]++; return "loaded_" + key; }));
+        Object loadedFirst = loadingHandler.getOrLoad("user7");
+        Object loadedSecond = loadingHandler.getOrLoad("user7");
+        Object explicitLoad = loadingHandler.getOrLoad("user8", key -> "explicit_" + key);
+        System.out.println("getOrLoad('user7') twice: " + loadedFirst + ", " + loadedSecond + " (loads: " + loads[0] + ")");
+        System.out.println("getOrLoad('user8', loader): " + explicitLoad);
+        assert "loaded_user7".equals(loadedSecond) && loads[0] == 1 : "A cached value should not be loaded again.";
+        assert "explicit_user8".equals(loadingHandler.getItem("user8")) : "Loaded values should be cached.";
+
+        System.out.println("\n--- Refresh-Ahead Test (TTL 60s, refresh after 45s) ---");
+        long[] refreshNow = {1_000_000L};
+        int[] version = {0};
+        LocalLruCache refreshingHandler = LocalLruCache.initialize(5, 60, new Options()
+                .ticker(() -> refreshNow[0])
+                .loader(key -> "v" + (++version[0]))
+                .refreshAfterWrite(45, TimeUnit.SECONDS)
+                .refreshExecutor(Runnable::run)); // Reload inline so the demo is deterministic
+        refreshingHandler.getOrLoad("config");
+        refreshNow[0] += 50_000;
+        Object beforeReload = refreshingHandler.getItem("config"); // Past the refresh point: served, reload started
+        Object afterReload = refreshingHandler.getItem("config");
+        System.out.println("At 50s: " + beforeReload + ", next read: " + afterReload);
+        assert "v1".equals(beforeReload) && "v2".equals(afterReload) : "Reads past the refresh point should trigger a reload.";
+        refreshNow[0] += 40_000; // 90s after the first load, 40s after the reload
+        assert "v2".equals(refreshingHandler.getItem("config")) : "A reloaded entry should get a fresh TTL.";
+        // A reload that finished while another thread was loading the key is older than that thread's value,
+        // even though the value's TTL counts from before the reload.
+        long[] datedNow = {1_000_000L};
+        int[] datedVersion = {0};
+        LocalLruCache datedHandler = LocalLruCache.initialize(5, 60, new Options()
+                .ticker(() -> datedNow[0])
+                .loader(key -> "v" + (++datedVersion[0]))
+                .refreshAfterWrite(45, TimeUnit.SECONDS)
+                .refreshExecutor(Runnable::run));
+        java.util.concurrent.ExecutorService datedWorker = java.util.concurrent.Executors.newSingleThreadExecutor();
+        Object datedValue;
+        try {
+            datedWorker.submit(() -> datedHandler.getOrLoad("config")).get(); // The worker caches v1
+            datedNow[0] += 50_000;
+            datedHandler.getOrLoad("config", key -> {
+                try {
+                    datedNow[0] += 1_000;
+                    datedWorker.submit(() -> datedHandler.getItem("config")).get(); // Reloads v2 for the worker
+                    datedNow[0] += 1_000;
+                } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+                return "mine";
+            });
+            datedNow[0] += 45_000; // Past the refresh point of "mine", dated from the end of its load
+            datedValue = datedHandler.getItem("config");
+        } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        datedWorker.shutdown();
+        System.out.println("Value loaded across another thread's reload, past its refresh point: " + datedValue);
+        assert "mine".equals(datedValue) : "An older reload should not replace a value loaded after it.";
+
+        System.out.println("\n--- Bulk getAll / putAll Test (Capacity 5, No TTL) ---");
+        LocalLruCache bulkHandler = LocalLruCache.initialize(5, 0);
+        Map<String, Object> bulkItems = new LinkedHashMap<>();
+        bulkItems.put("bulk1", "one");
+        bulkItems.put("bulk2", "two");
+        bulkHandler.putAll(bulkItems);
+        Map<String, Object> bulkFound = bulkHandler.getAll(Arrays.asList("bulk1", "missing", "bulk2"));
+        System.out.println("getAll(bulk1, missing, bulk2): " + bulkFound);
+        assert bulkFound.size() == 2 && "two".equals(bulkFound.get("bulk2")) : "getAll should return only the cached keys.";
+
+        System.out.println("\n--- Batched Loading Test (Capacity 10, No TTL) ---");
+        int[] batchCalls = {0};
+        BatchLoader<String> upperCaser = missing -> {
+            batchCalls[0]++;
+            Map<String, String> loaded = new LinkedHashMap<>();
+            missing.forEach(key -> loaded.put(key, key.toUpperCase()));
+            return loaded;
+        };
+        LocalLruCache batchHandler = LocalLruCache.initialize(10, 0,
+                new Options().batchLoader(upperCaser).batchWindow(3, 0, TimeUnit.MILLISECONDS));
+        batchHandler.addItem("b", "cached_b");
+        Map<String, String> batchFound = batchHandler.getAll(Arrays.asList("a", "b", "c"), upperCaser);
+        System.out.println("getAll(a, b, c) with batch loader: " + batchFound + " (loader calls: " + batchCalls[0] + ")");
+        assert "A".equals(batchFound.get("a")) && "cached_b".equals(batchFound.get("b")) && batchCalls[0] == 1;
+        java.util.concurrent.CompletableFuture<String> futureD = batchHandler.getOrLoadAsync("d");
+        java.util.concurrent.CompletableFuture<String> futureE = batchHandler.getOrLoadAsync("e");
+        assert !futureD.isDone() : "Misses should wait for the batch window.";
+        java.util.concurrent.CompletableFuture<String> futureF = batchHandler.getOrLoadAsync("f"); // Third miss fills the batch
+        System.out.println("getOrLoadAsync(d, e, f): " + futureD.join() + futureE.join() + futureF.join() + " (loader calls: " + batchCalls[0] + ")");
+        assert batchCalls[0] == 2 && "D".equals(batchHandler.getItem("d")) : "Queued misses should load in one batch.";
+        // Joining on the queuing thread sends its batch instead of waiting for the window to fill.
+        String joined = batchHandler.<String>getOrLoadAsync("g").thenApply(v -> v + "!").join();
+        System.out.println("getOrLoadAsync(g).thenApply(...).join() on the same thread: " + joined);
+        assert "G!".equals(joined) && batchCalls[0] == 3 : "Self-join should dispatch the thread's batch.";
+        // A thread that queues misses and exits leaves them to the background dispatcher.
+        java.util.concurrent.ExecutorService batchPool = java.util.concurrent.Executors.newSingleThreadExecutor();
+        LocalLruCache timedBatchHandler = LocalLruCache.initialize(10, 0, new Options().batchLoader(upperCaser)
+                .batchWindow(10, 20, TimeUnit.MILLISECONDS).batchExecutor(batchPool));
+        java.util.List<java.util.concurrent.CompletableFuture<String>> orphaned = new java.util.ArrayList<>();
+        Thread batchWorker = new Thread(() -> orphaned.add(timedBatchHandler.getOrLoadAsync("h")));
+        batchWorker.start();
+        try {
+            batchWorker.join();
+            String orphanValue = orphaned.get(0).get(5, TimeUnit.SECONDS);
+            System.out.println("Batch left by an exited thread, loaded in the background: " + orphanValue);
+            assert "H".equals(orphanValue);
+        } catch (Exception e) {
+            throw new AssertionError("The dispatcher should load a dead thread's batch.", e);
+        }
+        // A quiet live thread's overdue batch is loaded on the batch executor and cached on its next call.
+        java.util.concurrent.CompletableFuture<String> overdue = timedBatchHandler.getOrLoadAsync("i");
+        try {
+            // Poll rather than join: joining on this thread would send the batch itself.
+            for (int i = 0; i < 500 && !overdue.isDone(); i++) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assert "I".equals(overdue.getNow(null)) : "The dispatcher should load a quiet thread's overdue batch.";
+        timedBatchHandler.dispatchLoads(); // Caches the handed-back value
+        System.out.println("Overdue batch value cached on the owner's next call: " + timedBatchHandler.getItem("i"));
+        assert "I".equals(timedBatchHandler.getItem("i")) : "Handed-back values should be cached by their owner.";
+        batchPool.shutdown();
+
+        System.out.println("\n--- Statistics Test (Capacity 2, No TTL) ---");
+        LocalLruCache statsHandler = LocalLruCache.initialize(2, 0, new Options().recordStats());
+        statsHandler.addItem("s1", "v1");
+        statsHandler.getItem("s1");
+        statsHandler.getItem("nope");
+        statsHandler.getOrLoad("s2", key -> "loaded");
+        statsHandler.addItem("s3", "v3"); // Evicts "s1"
+        CacheStats statsSnapshot = statsHandler.stats();
+        System.out.println(statsSnapshot);
+        assert statsSnapshot.hitCount() == 1 && statsSnapshot.missCount() == 2 : "Hits and misses should be counted.";
+        assert statsSnapshot.loadSuccessCount() == 1 && statsSnapshot.evictionCount() == 1;
+
+        System.out.println("\n--- Latency Histogram Test (Capacity 10, No TTL) ---");
+        LocalLruCache latencyHandler = LocalLruCache.initialize(10, 0, new Options().recordLatencies(true));
+        for (int i = 0; i < 100; i++) {
+            latencyHandler.addItem("l" + (i % 10), i);
+            latencyHandler.getItem("l" + (i % 20));
+        }
+        latencyHandler.getOrLoad("slow", key -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "loaded";
+        });
+        LatencySnapshot loadLatency = latencyHandler.loadLatency();
+        System.out.println("Loads: " + loadLatency);
+        System.out.println("getItem: " + latencyHandler.getLatency());
+        System.out.println("addItem: " + latencyHandler.addLatency());
+        assert loadLatency.count() == 1 && loadLatency.p50() >= 5_000_000L : "The load should be recorded.";
+        assert latencyHandler.getLatency().count() == 100 && latencyHandler.addLatency().count() == 100;
+        assert statsHandler.loadLatency().count() == 0 : "Latencies are only recorded when enabled.";
+
+        System.out.println("\n--- MBean Test (Capacity 3, No TTL) ---");
+        LocalLruCache mbeanHandler = LocalLruCache.initialize(3, 0,
+                new Options().name("demo").registerMBean().recordStats());
+        mbeanHandler.addItem("m1", "v1");
+        mbeanHandler.addItem("m2", "v2");
+        java.util.concurrent.CountDownLatch workerAdded = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch workerRelease = new java.util.concurrent.CountDownLatch(1);
+        Thread mbeanWorker = new Thread(() -> {
+            mbeanHandler.addItem("w1", "v1");
+            workerAdded.countDown();
+            try {
+                workerRelease.await(); // Keep the thread, and so its store, alive
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        mbeanWorker.start();
+        try {
+            workerAdded.await();
+            javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+            ObjectName demoName = new ObjectName("com.example.locallru:type=LocalLruCache,name=\"demo\"");
+            // Our store and the worker's.
+            System.out.println("Live stores: " + server.getAttribute(demoName, "LiveStoreCount")
+                    + ", entries: " + server.getAttribute(demoName, "TotalEntryCount")
+                    + ", est. bytes: " + server.getAttribute(demoName, "EstimatedMemoryBytes"));
+            assert (Integer) server.getAttribute(demoName, "LiveStoreCount") == 2;
+            assert (Long) server.getAttribute(demoName, "TotalEntryCount") == 3;
+            server.invoke(demoName, "resize", new Object[]{1}, new String[]{"int"});
+            assert mbeanHandler.getItem("m1") == null && mbeanHandler.getItem("m2") != null : "Resize should evict down to 1.";
+            server.invoke(demoName, "clear", new Object[0], new String[0]);
+            assert mbeanHandler.getItem("m2") == null : "Clear should empty the store.";
+            System.out.println("After resize and clear, max entries: " + server.getAttribute(demoName, "MaxEntryCount")
+                    + ", hit rate: " + server.getAttribute(demoName, "HitRate"));
+            assert (Long) server.getAttribute(demoName, "TotalEntryCount") == 0 : "Clear should reach every thread.";
+            mbeanHandler.unregisterMBean();
+            assert !server.isRegistered(demoName) : "MBean should be unregistered.";
+            workerRelease.countDown();
+            mbeanWorker.join();
+        } catch (javax.management.JMException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+
+        System.out.println("\n--- Flight Recorder Events Test (Capacity 2, TTL 1s) ---");
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+            recording.enable("com.example.locallru.SlowLoad").withThreshold(java.time.Duration.ofMillis(1));
+            recording.enable("com.example.locallru.EvictionBatch");
+            recording.enable("com.example.locallru.ExpirySweep");
+            recording.start();
+            long[] jfrNow = {1_000_000L};
+            LocalLruCache jfrHandler = LocalLruCache.initialize(2, 1, new Options().name("jfr-demo")
+                    .ticker(() -> jfrNow[0]).expirySweepInterval(1, TimeUnit.HOURS)); // Swept by hand below
+            jfrHandler.getOrLoad("slow", key -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "loaded";
+            });
+            for (int i = 0; i < CacheEvents.EVICTION_BATCH_SIZE + 12; i++) {
+                jfrHandler.addItem("e" + i, i); // With "slow", evicts from the second add on: one full batch, then 11 more
+            }
+            jfrNow[0] += 2_000;
+            jfrHandler.sweepExpired();
+            recording.stop();
+            java.nio.file.Path dump = java.nio.file.Files.createTempFile("locallru", ".jfr");
+            recording.dump(dump);
+            Map<String, Integer> eventCounts = new java.util.TreeMap<>();
+            int evictionsRecorded = 0;
+            for (jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(dump)) {
+                if ("jfr-demo".equals(event.getString("handler"))) {
+                    eventCounts.merge(event.getEventType().getName(), 1, Integer::sum);
+                    if (event.hasField("evictedCount")) {
+                        evictionsRecorded += event.getInt("evictedCount");
+                    }
+                }
+            }
+            java.nio.file.Files.delete(dump);
+            System.out.println("Recorded: " + eventCounts + ", evictions: " + evictionsRecorded);
+            assert eventCounts.size() == 3 : "A slow load, eviction batches and a sweep should be recorded.";
+            assert evictionsRecorded == CacheEvents.EVICTION_BATCH_SIZE + 11 : "The partial batch should be committed as the recording stops.";
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+
+        System.out.println("\n--- Store Registry Test (Capacity 3, No TTL) ---");
+        LocalLruCache registryHandler = LocalLruCache.initialize(3, 0);
+        registryHandler.addItem("r1", "v1");
+        java.util.concurrent.CountDownLatch registryAdded = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch registryCleared = new java.util.concurrent.CountDownLatch(1);
+        Object[] workerSaw = new Object[1];
+        Thread registryWorker = new Thread(() -> {
+            registryHandler.addItem("w1", "v1");
+            registryHandler.addItem("w2", "v2");
+            registryAdded.countDown();
+            try {
+                registryCleared.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            workerSaw[0] = registryHandler.getItem("w1"); // Applies the clear first
+        });
+        registryWorker.start();
+        try {
+            registryAdded.await();
+            System.out.println("Live stores: " + registryHandler.liveStoreCount()
+                    + ", entries: " + registryHandler.totalEntryCount()
+                    + ", fullest: " + registryHandler.maxStoreEntryCount()
+                    + ", est. bytes: " + registryHandler.estimatedMemoryBytes());
+            assert registryHandler.liveStoreCount() == 2 && registryHandler.totalEntryCount() == 3;
+            registryHandler.clear();
+            assert registryHandler.getItem("r1") == null : "Our own store should be cleared at once.";
+            assert registryHandler.totalEntryCount() == 2 : "The worker's store waits for its next call.";
+            registryCleared.countDown();
+            registryWorker.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.println("Worker read after clear: " + workerSaw[0] + ", live stores after it ended: "
+                + registryHandler.liveStoreCount());
+        assert workerSaw[0] == null : "The worker should apply the clear before its read.";
+        assert registryHandler.liveStoreCount() == 1 : "A terminated thread's store should not be counted.";
+
+        System.out.println("\n--- Invalidation Test (Capacity 5, No TTL) ---");
+        LocalLruCache invalidationHandler = LocalLruCache.initialize(5, 0);
+        invalidationHandler.addItem("price_1", 10);
+        invalidationHandler.addItem("price_2", 20);
+        java.util.concurrent.CountDownLatch readerLoaded = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch pricesChanged = new java.util.concurrent.CountDownLatch(1);
+        Object[] readerSaw = new Object[3];
+        Thread priceReader = new Thread(() -> {
+            invalidationHandler.addItem("price_1", 10);
+            invalidationHandler.addItem("price_2", 20);
+            invalidationHandler.addItem("price_3", 30);
+            readerLoaded.countDown();
+            try {
+                pricesChanged.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            readerSaw[0] = invalidationHandler.getItem("price_1"); // Drains the queued invalidations first
+            readerSaw[1] = invalidationHandler.getItem("price_2");
+            readerSaw[2] = invalidationHandler.getItem("price_3");
+        });
+        priceReader.start();
+        try {
+            readerLoaded.await();
+            invalidationHandler.invalidate("price_1");
+            invalidationHandler.invalidateAll(Arrays.asList("price_2", "missing"));
+            assert invalidationHandler.getItem("price_1") == null && invalidationHandler.getItem("price_2") == null
+                    : "Our own store should drop the keys at once.";
+            assert invalidationHandler.totalEntryCount() == 3 : "The reader's store waits for its next call.";
+            pricesChanged.countDown();
+            priceReader.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.println("Reader saw after invalidation: " + Arrays.toString(readerSaw));
+        assert readerSaw[0] == null && readerSaw[1] == null : "The reader should drop invalidated keys before reading.";
+        assert Integer.valueOf(30).equals(readerSaw[2]) : "Other keys should stay cached.";
+
+        System.out.println("\n--- Invalidation Race Test (loads running across an invalidation) ---");
+        // A single-flight load that read the old data: misses after the invalidation don't join it, and
+        // its value is returned to its thread but not cached over theirs.
+        java.util.concurrent.CountDownLatch oldLoadStarted = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch stockChanged = new java.util.concurrent.CountDownLatch(1);
+        LocalLruCache flightRaceHandler = LocalLruCache.initialize(5, 0, new Options().mode(Mode.SHARED).singleFlightLoading());
+        Object[] oldLoadSaw = new Object[1];
+        Thread oldLoader = new Thread(() -> oldLoadSaw[0] = flightRaceHandler.getOrLoad("stock", key -> {
+            oldLoadStarted.countDown();
+            try {
+                stockChanged.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "old";
+        }));
+        oldLoader.start();
+        Object newLoad;
+        try {
+            oldLoadStarted.await();
+            flightRaceHandler.invalidate("stock");
+            newLoad = flightRaceHandler.getOrLoad("stock", key -> "new"); // Would wait for the old load if it joined it
+            stockChanged.countDown();
+            oldLoader.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.println("Old load returned: " + oldLoadSaw[0] + ", load after invalidation: " + newLoad
+                + ", cached: " + flightRaceHandler.getItem("stock"));
+        assert "old".equals(oldLoadSaw[0]) && "new".equals(newLoad);
+        assert "new".equals(flightRaceHandler.getItem("stock")) : "An invalidated load should not be cached.";
+
+        // A reload that finishes after the invalidation and a newer write must not be adopted as newer.
+        long[] raceNow = {1_000_000L};
+        int[] raceReloads = {0};
+        java.util.concurrent.CountDownLatch reloadStarted = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch rateChanged = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.ExecutorService reloadPool = java.util.concurrent.Executors.newSingleThreadExecutor();
+        LocalLruCache reloadRaceHandler = LocalLruCache.initialize(5, 60, new Options()
+                .ticker(() -> raceNow[0])
+                .loader(key -> {
+                    reloadStarted.countDown();
+                    try {
+                        rateChanged.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "reload" + (++raceReloads[0]);
+                })
+                .refreshAfterWrite(45, TimeUnit.SECONDS)
+                .refreshExecutor(reloadPool));
+        reloadRaceHandler.addItem("rate", "v1");
+        raceNow[0] += 50_000;
+        reloadRaceHandler.getItem("rate"); // Past the refresh point: starts a reload of the old data
+        Object rateAfterRace;
+        try {
+            reloadStarted.await();
+            reloadRaceHandler.invalidate("rate");
+            reloadRaceHandler.addItem("rate", "v2");
+            raceNow[0] += 1_000; // The reload finishes after v2 was written
+            rateChanged.countDown();
+            reloadPool.submit(() -> { }).get(); // The pool's one thread has finished the reload
+            raceNow[0] += 50_000; // v2 is past its refresh point
+            rateAfterRace = reloadRaceHandler.getItem("rate");
+        } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        reloadPool.shutdown();
+        System.out.println("Read past v2's refresh point: " + rateAfterRace);
+        assert "v2".equals(rateAfterRace) : "A reload started before an invalidation should be dropped.";
+
+        // Batch values the background dispatcher loads for a thread are dropped if invalidated before the
+        // thread caches them, whether still loading or already handed back.
+        java.util.concurrent.CountDownLatch batchStarted = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch batchRelease = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.ExecutorService handBackPool = java.util.concurrent.Executors.newSingleThreadExecutor();
+        LocalLruCache handBackHandler = LocalLruCache.initialize(10, 0, new Options()
+                .batchLoader(missing -> {
+                    batchStarted.countDown();
+                    try {
+                        batchRelease.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    Map<String, String> loaded = new LinkedHashMap<>();
+                    missing.forEach(key -> loaded.put(key, key.toUpperCase()));
+                    return loaded;
+                })
+                .batchWindow(10, 20, TimeUnit.MILLISECONDS)
+                .batchExecutor(handBackPool));
+        CompletableFuture<String> q1 = handBackHandler.getOrLoadAsync("q1");
+        CompletableFuture<String> q2 = handBackHandler.getOrLoadAsync("q2");
+        CompletableFuture<String> q3 = handBackHandler.getOrLoadAsync("q3");
+        try {
+            batchStarted.await(); // The dispatcher sent the overdue batch to the pool
+            handBackHandler.invalidate("q1"); // While it loads
+            batchRelease.countDown();
+            handBackPool.submit(() -> { }).get(); // The batch has been handed back
+            handBackHandler.invalidate("q2"); // Handed back, not yet cached
+        } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        handBackPool.shutdown();
+        handBackHandler.dispatchLoads(); // Caches what is left of the handed-back values
+        System.out.println("Futures: " + q1.getNow(null) + ", " + q2.getNow(null) + ", " + q3.getNow(null)
+                + "; cached: " + handBackHandler.getItem("q1") + ", " + handBackHandler.getItem("q2")
+                + ", " + handBackHandler.getItem("q3"));
+        assert "Q1".equals(q1.getNow(null)) && "Q2".equals(q2.getNow(null)) : "Waiting callers still get the values.";
+        assert handBackHandler.getItem("q1") == null && handBackHandler.getItem("q2") == null
+                : "Invalidated batch values should not be cached.";
+        assert "Q3".equals(handBackHandler.getItem("q3")) : "Other handed-back values should be cached.";
+
         System.out.println("\nAll basic tests in main completed.");
     }
 
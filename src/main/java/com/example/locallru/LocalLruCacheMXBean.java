@@ -0,0 +1,76 @@
+package com.example.locallru;
+
+/**
+ * Management interface of a {@link LocalLruCache} handler, registered with the platform MBean server
+ * when the handler is created with {@link LocalLruCache.Options#registerMBean()}, under
+ * {@code com.example.locallru:type=LocalLruCache,name=<handler name>}.
+ * <p>
+ * Counts are read from running threads without stopping them, so they may lag slightly. In
+ * {@link LocalLruCache.Mode#SHARED} the handler has a single store.
+ */
+public interface LocalLruCacheMXBean {
+
+    /** @return The handler's name. */
+    String getName();
+
+    /** @return The handler's storage {@link LocalLruCache.Mode}. */
+    String getMode();
+
+    /** @return The handler's eviction {@link LocalLruCache.Policy}. */
+    String getPolicy();
+
+    /** @return Max entries per thread's store, or in total in shared mode. */
+    int getCapacity();
+
+    /** @return Number of stores whose threads are still alive. */
+    int getLiveStoreCount();
+
+    /** @return Entries across all live stores. */
+    long getTotalEntryCount();
+
+    /** @return Entries in the fullest store. */
+    int getMaxEntryCount();
+
+    /**
+     * @return Rough heap bytes taken by the stores' bookkeeping (keys and values are not counted),
+     *         plus native memory reserved for off-heap values.
+     */
+    long getEstimatedMemoryBytes();
+
+    /** @return See {@link CacheStats#hitCount()}; 0 unless the handler records stats. */
+    long getHitCount();
+
+    /** @return See {@link CacheStats#missCount()}. */
+    long getMissCount();
+
+    /** @return See {@link CacheStats#hitRate()}. */
+    double getHitRate();
+
+    /** @return See {@link CacheStats#evictionCount()}. */
+    long getEvictionCount();
+
+    /** @return See {@link CacheStats#expirationCount()}. */
+    long getExpirationCount();
+
+    /** @return See {@link CacheStats#loadSuccessCount()}. */
+    long getLoadSuccessCount();
+
+    /** @return See {@link CacheStats#loadFailureCount()}. */
+    long getLoadFailureCount();
+
+    /** @return See {@link CacheStats#averageLoadPenaltyNanos()}. */
+    double getAverageLoadPenaltyNanos();
+
+    /**
+     * Removes every entry from every live store (and the overflow tier, if any).
+     */
+    void clear();
+
+    /**
+     * Changes the capacity of every live store, evicting least recently used entries at once where a
+     * store is over it, and of stores created later. Array-backed stores cannot grow past the capacity
+     * they were allocated with.
+     * @param capacity New capacity. Must be positive.
+     */
+    void resize(int capacity);
+}
@@ -0,0 +1,187 @@
+package com.example.locallru;
+
+import java.util.Objects;
+
+/**
+ * A {@link LocalLruCache} variant for primitive {@code long} keys, such as numeric IDs.
+ * <p>
+ * Like {@link LocalLruCache} in {@link LocalLruCache.Mode#THREAD_LOCAL}, each thread gets its own LRU cache,
+ * but keys are never turned into {@code String}s or boxed: each thread's store keeps them in an
+ * open-addressed {@code long[]} table and links entries in LRU order by {@code int} index in parallel
+ * arrays. Storage is allocated once per thread for the full capacity, so adding, reading and evicting
+ * entries allocates nothing, and an entry costs a few array slots instead of a {@code String}, a
+ * {@code CacheEntry} and a {@code LinkedHashMap} node.
+ * <pre>{@code
+ * LongLruCache users = LongLruCache.initialize(10_000, 60);
+ * users.addItem(userId, profile);
+ * Profile p = users.getItem(userId);
+ * }</pre>
+ * Expired entries are dropped when they are read or reach the LRU end; there is no timer wheel or sweeper.
+ */
+public class LongLruCache {
+
+    /** Capacity for this specific cache handler instance. */
+    private final int instanceCapacity;
+
+    /** TTL in milliseconds for this specific cache handler instance. 0 or less means no TTL. */
+    private final long instanceTtlMillis;
+
+    /** Time source for this specific cache handler instance's TTL checks. */
+    private final Ticker ticker;
+
+    /** Holds each thread's store. */
+    private final ThreadLocal<LongStore> threadLocalCache;
+
+    /**
+     * Creates a {@code LongLruCache} handler with the given capacity and TTL, using the system clock.
+     *
+     * @param capacity Max items per thread's cache (must be positive).
+     * @param ttlSeconds TTL for entries in seconds (0 or less for infinite TTL).
+     * @return A configured {@code LongLruCache} handler.
+     * @throws IllegalArgumentException if capacity is not positive or too large for one table.
+     */
+    public static LongLruCache initialize(int capacity, long ttlSeconds) {
+        return initialize(capacity, ttlSeconds, Ticker.system());
+    }
+
+    /**
+     * Creates a {@code LongLruCache} handler with the given capacity, TTL and time source.
+     *
+     * @param capacity Max items per thread's cache (must be positive).
+     * @param ttlSeconds TTL for entries in seconds (0 or less for infinite TTL).
+     * @param ticker Time source for TTL checks.
+     * @return A configured {@code LongLruCache} handler.
+     * @throws IllegalArgumentException if capacity is not positive or too large for one table.
+     */
+    public static LongLruCache initialize(int capacity, long ttlSeconds, Ticker ticker) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        if (capacity > LongStore.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be at most " + LongStore.MAX_CAPACITY + ".");
+        }
+        Objects.requireNonNull(ticker, "ticker");
+        return new LongLruCache(capacity, (ttlSeconds > 0) ? ttlSeconds * 1000 : 0, ticker);
+    }
+
+    private LongLruCache(int capacity, long ttlMillis, Ticker ticker) {
+        this.instanceCapacity = capacity;
+        this.instanceTtlMillis = ttlMillis;
+        this.ticker = ticker;
+        this.threadLocalCache = ThreadLocal.withInitial(() -> new LongStore(instanceCapacity, instanceTtlMillis > 0));
+    }
+
+    /**
+     * Adds an item to the current thread's local cache, overwriting any item with the same key.
+     *
+     * @param key Item's key.
+     * @param value Item's value.
+     * @param <V> Value type.
+     */
+    public <V> void addItem(long key, V value) {
+        long expiration = (instanceTtlMillis > 0) ? ticker.currentTimeMillis() + instanceTtlMillis : 0;
+        threadLocalCache.get().put(key, value, expiration);
+    }
+
+    /**
+     * Retrieves an item from the current thread's local cache.
+     * Returns null if not found or if the item has expired (and removes it).
+     *
+     * @param key Item's key.
+     * @param <V> Expected value type (casting is attempted by the JVM on assignment).
+     * @return The value, or null if not found/expired.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V getItem(long key) {
+        long now = (instanceTtlMillis > 0) ? ticker.currentTimeMillis() : 0;
+        return (V) threadLocalCache.get().get(key, now);
+    }
+
+    /**
+     * One thread's cache, indexed by an {@link LruSlotTable} probed with Fibonacci hashes of the keys.
+     * Not thread-safe; only ever used by its owning thread.
+     */
+    private static final class LongStore extends LruSlotTable {
+        private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+        private final int shift; // 64 - log2(table.length), for Fibonacci hashing
+
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] expirations; // null if the handler has no TTL
+
+        LongStore(int capacity, boolean expiring) {
+            super(capacity);
+            this.shift = 64 - Integer.numberOfTrailingZeros(table.length);
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.expirations = expiring ? new long[capacity] : null;
+        }
+
+        Object get(long key, long nowMillis) {
+            int bucket = find(key);
+            if (bucket < 0) {
+                return null;
+            }
+            int slot = table[bucket] - 1;
+            if (expirations != null && nowMillis > expirations[slot]) {
+                remove(bucket, slot); // Eagerly remove expired entry upon access
+                return null;
+            }
+            moveToTail(slot);
+            return values[slot];
+        }
+
+        void put(long key, Object value, long expirationMillis) {
+            int bucket = find(key);
+            int slot;
+            if (bucket >= 0) {
+                slot = table[bucket] - 1;
+                moveToTail(slot);
+            } else {
+                if (size == capacity) {
+                    remove(find(keys[head]), head); // Evict the least recently used entry
+                    bucket = find(key); // The eviction may have opened a hole earlier on the key's probe path
+                }
+                slot = insert(bucket);
+                keys[slot] = key;
+            }
+            values[slot] = value;
+            if (expirations != null) {
+                expirations[slot] = expirationMillis;
+            }
+        }
+
+        /**
+         * @return The key's bucket, or {@code ~bucket} of the empty bucket where it would be inserted.
+         */
+        private int find(long key) {
+            int mask = table.length - 1;
+            int bucket = homeOf(key);
+            while (true) {
+                int entry = table[bucket];
+                if (entry == 0) {
+                    return ~bucket;
+                }
+                if (keys[entry - 1] == key) {
+                    return bucket;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+        }
+
+        private int homeOf(long key) {
+            return (int) ((key * GOLDEN_RATIO) >>> shift);
+        }
+
+        @Override
+        int home(int slot) {
+            return homeOf(keys[slot]);
+        }
+
+        private void remove(int bucket, int slot) {
+            values[slot] = null; // Don't keep the value reachable
+            removeSlot(bucket, slot);
+        }
+    }
+}
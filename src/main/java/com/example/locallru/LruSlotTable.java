@@ -0,0 +1,144 @@
+package com.example.locallru;
+
+import java.util.Arrays;
+
+/**
+ * The index structure shared by the preallocated stores ({@link ArrayLruStore} and the {@link LongLruCache}
+ * store): entries live in slots {@code 0..capacity-1} of the subclass's parallel arrays, linked into LRU
+ * order by {@code int} index, and found through {@code table}, a linear-probing hash table of slot indexes
+ * plus one (0 marks an empty bucket) that is at most half full. Removals use backward-shift deletion, so
+ * there are no tombstones. Unused slots are kept on a free list threaded through {@link #next}.
+ * <p>
+ * Subclasses own the keys and the probe loop that compares them, and say where each entry's probe run
+ * starts through {@link #home(int)}. Not thread-safe.
+ */
+abstract class LruSlotTable {
+    /** Keeps the table, at twice the capacity rounded up to a power of two, within array limits. */
+    static final int MAX_CAPACITY = 1 << 29;
+
+    static final int NONE = -1;
+
+    final int capacity; // Slots allocated
+    final int[] table;
+    final int[] prev;
+    final int[] next; // Also links the free list
+
+    int head = NONE; // Least recently used
+    int tail = NONE; // Most recently used
+    int freeHead;
+    int size;
+
+    /**
+     * @param capacity Slots to allocate. Must be positive and at most {@link #MAX_CAPACITY}.
+     */
+    LruSlotTable(int capacity) {
+        this.capacity = capacity;
+        this.table = new int[Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        linkFreeSlots();
+    }
+
+    /**
+     * @return The bucket where the probe run of the entry in {@code slot} starts.
+     */
+    abstract int home(int slot);
+
+    /**
+     * Takes a free slot for a new entry and links it as the most recently used.
+     * @param missing {@code ~bucket} of the empty bucket where the key would be inserted, as returned by
+     *        the subclass's lookup.
+     * @return The slot; the caller fills in its key and value.
+     */
+    final int insert(int missing) {
+        int slot = freeHead;
+        freeHead = next[slot];
+        table[~missing] = slot + 1;
+        linkLast(slot);
+        size++;
+        return slot;
+    }
+
+    /**
+     * Unlinks the entry in {@code slot}, found at {@code bucket}, and returns the slot to the free list.
+     * The caller clears the slot's key and value.
+     */
+    final void removeSlot(int bucket, int slot) {
+        unlink(slot);
+        next[slot] = freeHead;
+        freeHead = slot;
+        size--;
+
+        // Backward-shift deletion: pull later entries of the probe run into the hole when allowed.
+        int mask = table.length - 1;
+        int hole = bucket;
+        int probe = bucket;
+        while (true) {
+            probe = (probe + 1) & mask;
+            int entry = table[probe];
+            if (entry == 0) {
+                break;
+            }
+            int entryHome = home(entry - 1);
+            // Move it unless its home lies cyclically within (hole, probe].
+            boolean homeBetween = (hole <= probe)
+                    ? (hole < entryHome && entryHome <= probe)
+                    : (hole < entryHome || entryHome <= probe);
+            if (!homeBetween) {
+                table[hole] = entry;
+                hole = probe;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    /**
+     * Forgets every entry. The caller clears its own per-slot arrays.
+     */
+    void reset() {
+        Arrays.fill(table, 0);
+        linkFreeSlots();
+        head = tail = NONE;
+        size = 0;
+    }
+
+    final void moveToTail(int slot) {
+        if (slot != tail) {
+            unlink(slot);
+            linkLast(slot);
+        }
+    }
+
+    private void linkFreeSlots() {
+        for (int i = 0; i < capacity; i++) {
+            next[i] = (i + 1 < capacity) ? i + 1 : NONE;
+        }
+        freeHead = 0;
+    }
+
+    private void linkLast(int slot) {
+        prev[slot] = tail;
+        next[slot] = NONE;
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            next[tail] = slot;
+        }
+        tail = slot;
+    }
+
+    private void unlink(int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p == NONE) {
+            head = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NONE) {
+            tail = p;
+        } else {
+            prev[n] = p;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.locallru;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A second cache tier in a memory-mapped file, holding entries that were evicted from a handler's stores
+ * to make room. Enabled with {@link LocalLruCache.Options#overflowTier(Path, long)}.
+ * <p>
+ * The file is used as a circular log: each evicted entry is appended as one record, and once the log
+ * wraps around, the oldest records are overwritten (and dropped from the index) first. An in-memory
+ * index maps each key to its latest record, so a lookup is one hash probe plus one read from the
+ * mapping, which the OS keeps in its page cache rather than on the Java heap.
+ * <p>
+ * Only {@code byte[]} and {@code String} values are written; others are dropped as before. Nothing is
+ * ever deserialized from the file, so a record can only be read back as the bytes or text it was
+ * written from. The file is scratch space: it is truncated when the handler is created and its contents
+ * do not survive a restart. Thread-safe: appends are serialized, reads and index updates are not; values
+ * are encoded before an append takes the lock.
+ */
+final class MappedOverflowTier {
+
+    private static final byte TYPE_BYTES = 0;
+    private static final byte TYPE_STRING = 1;
+
+    /** Key length, expiration, type and value length preceding the key and value bytes. */
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + 1 + Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final ConcurrentHashMap<String, Record> index = new ConcurrentHashMap<>();
+
+    // Guarded by this: records in file order, oldest first, and the append position.
+    private final ArrayDeque<Record> log = new ArrayDeque<>();
+    private int writePosition;
+
+    /**
+     * Maps {@code file}, creating it if needed and truncating what a previous run left in it.
+     * @param file Where to keep the tier.
+     * @param sizeBytes Size of the mapping; at most {@link Integer#MAX_VALUE}.
+     * @throws UncheckedIOException if the file cannot be created or mapped.
+     */
+    MappedOverflowTier(Path file, long sizeBytes) {
+        this.capacity = (int) sizeBytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // The mapping stays valid after the channel is closed.
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map overflow tier file: " + file, e);
+        }
+    }
+
+    /**
+     * Appends an evicted entry. Values other than {@code byte[]} and {@code String}, and records larger
+     * than the file, are skipped.
+     * @param key Entry's key.
+     * @param value Entry's value, already copied on-heap if it was stored off-heap.
+     * @param expirationTimeMillis Absolute expiration time, or 0 for none.
+     * @param writeTimeMillis Time the value was written or loaded, kept for refresh-ahead.
+     */
+    void spill(String key, Object value, long expirationTimeMillis, long writeTimeMillis) {
+        byte type;
+        byte[] valueBytes;
+        if (value instanceof byte[]) {
+            type = TYPE_BYTES;
+            valueBytes = (byte[]) value;
+        } else if (value instanceof String) {
+            type = TYPE_STRING;
+            valueBytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        } else {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + keyBytes.length + valueBytes.length;
+        if (length > capacity) {
+            return;
+        }
+
+        synchronized (this) {
+            if (writePosition + length > capacity) {
+                // Wrap: everything from here to the end of the file is the oldest lap; drop it.
+                while (!log.isEmpty() && log.peekFirst().offset >= writePosition) {
+                    drop(log.pollFirst());
+                }
+                writePosition = 0;
+            }
+            int start = writePosition;
+            int end = start + length;
+            while (!log.isEmpty() && log.peekFirst().offset < end && log.peekFirst().offset >= start) {
+                drop(log.pollFirst()); // Oldest records we are about to overwrite.
+            }
+
+            int position = start;
+            buffer.putInt(position, keyBytes.length);
+            position += Integer.BYTES;
+            buffer.putLong(position, expirationTimeMillis);
+            position += Long.BYTES;
+            buffer.put(position, type);
+            position += 1;
+            buffer.putInt(position, valueBytes.length);
+            position += Integer.BYTES;
+            buffer.put(position, keyBytes);
+            position += keyBytes.length;
+            buffer.put(position, valueBytes);
+
+            Record record = new Record(key, start, expirationTimeMillis, writeTimeMillis, type,
+                    start + HEADER_SIZE + keyBytes.length, valueBytes.length);
+            log.addLast(record);
+            index.put(key, record);
+            writePosition = end;
+        }
+    }
+
+    /**
+     * Looks up a spilled entry.
+     * @param nowMillis Current time from the handler's {@link Ticker}, to skip expired records.
+     * @return The record, or null if absent or expired.
+     */
+    Record find(String key, long nowMillis) {
+        Record record = index.get(key);
+        if (record == null) {
+            return null;
+        }
+        if (record.expirationTimeMillis > 0 && nowMillis > record.expirationTimeMillis) {
+            index.remove(key, record);
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Reads a record's value back onto the heap.
+     * @return The value, or null if the record was overwritten meanwhile.
+     */
+    Object read(Record record) {
+        byte[] bytes;
+        synchronized (this) {
+            // Checked under the lock: an append may be overwriting this record's bytes right now.
+            if (index.get(record.key) != record) {
+                return null;
+            }
+            bytes = new byte[record.valueLength];
+            buffer.get(record.valueOffset, bytes);
+        }
+        return (record.type == TYPE_STRING) ? new String(bytes, StandardCharsets.UTF_8) : bytes;
+    }
+
+    /**
+     * Forgets any spilled version of {@code key}, e.g. because a newer value was added.
+     */
+    void invalidate(String key) {
+        index.remove(key);
+    }
+
+    /**
+     * Forgets every spilled entry; the file's space is reused from the start.
+     */
+    synchronized void clear() {
+        index.clear();
+        log.clear();
+        writePosition = 0;
+    }
+
+    /** Caller holds the lock. */
+    private void drop(Record record) {
+        index.remove(record.key, record);
+    }
+
+    /**
+     * Location of one spilled entry in the file.
+     */
+    static final class Record {
+        final String key;
+        final int offset;
+        final long expirationTimeMillis;
+        final long writeTimeMillis; // Only kept in the index; the file holds what is needed to read the value
+        final byte type;
+        final int valueOffset;
+        final int valueLength;
+
+        Record(String key, int offset, long expirationTimeMillis, long writeTimeMillis, byte type, int valueOffset,
+               int valueLength) {
+            this.key = key;
+            this.offset = offset;
+            this.expirationTimeMillis = expirationTimeMillis;
+            this.writeTimeMillis = writeTimeMillis;
+            this.type = type;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+    }
+}
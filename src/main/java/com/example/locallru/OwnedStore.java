@@ -0,0 +1,228 @@
+package com.example.locallru;
+
+import com.example.locallru.LocalLruCache.CacheEntry;
+import com.example.locallru.LocalLruCache.CacheStore;
+
+import java.util.function.Consumer;
+
+/**
+ * A per-thread store that other threads (the handler's expiry sweeper, or its management operations)
+ * may also reach through a {@link StoreRegistry}.
+ * <p>
+ * The wrapped store is not thread-safe, so the owner and a sweeper must never use it at the same time.
+ * Instead of a lock they use a Dekker-style handshake on two volatile flags: the owner raises
+ * {@code inUse} around each call and only backs off if a sweep is in progress, and the sweeper raises
+ * {@code sweeping} and gives up if the owner is inside a call. The owner's hot path is therefore two
+ * volatile writes and a volatile read, with no CAS and no blocking unless it races an actual sweep.
+ * <p>
+ * A sweeper that loses the race simply skips the store: its owner is active, and an active owner
+ * reclaims expired entries itself through its {@link TimerWheel} on the next access. Other threads
+ * that must act, such as a management {@code clear}, wait for the owner's current call instead. Other
+ * threads serialize among themselves on this object's monitor, which the owner never takes.
+ */
+final class OwnedStore implements CacheStore {
+    private final CacheStore delegate;
+
+    private volatile boolean inUse;
+    private volatile boolean sweeping;
+
+    /**
+     * Wraps the calling thread's store.
+     * @param delegate The thread's own, non-thread-safe store.
+     */
+    OwnedStore(CacheStore delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Called by a sweeper thread: reclaims expired entries unless the owner is using the store.
+     * @param nowMillis Current time from the handler's {@link Ticker}.
+     * @return Number of entries reclaimed, or -1 if the owner was busy.
+     */
+    synchronized int trySweep(long nowMillis) {
+        sweeping = true;
+        try {
+            if (inUse) {
+                return -1;
+            }
+            int before = delegate.size();
+            delegate.cleanUp(nowMillis);
+            return before - delegate.size();
+        } finally {
+            sweeping = false;
+        }
+    }
+
+    /**
+     * Called by a thread other than the owner: runs {@code action} on the store as soon as the owner is
+     * not inside a call. Owner calls are short store operations, so this spins rather than blocks.
+     */
+    synchronized void runExclusive(Consumer<CacheStore> action) {
+        while (true) {
+            sweeping = true;
+            if (!inUse) {
+                try {
+                    action.accept(delegate);
+                    return;
+                } finally {
+                    sweeping = false;
+                }
+            }
+            sweeping = false; // Let the owner finish its call
+            while (inUse) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void enter() {
+        inUse = true;
+        while (sweeping) {
+            // A sweeper got here first; let it finish. Sweeps touch one store briefly, so spin.
+            inUse = false;
+            while (sweeping) {
+                Thread.onSpinWait();
+            }
+            inUse = true;
+        }
+    }
+
+    private void exit() {
+        inUse = false;
+    }
+
+    @Override
+    public CacheEntry<?> getEntry(String key) {
+        enter();
+        try {
+            return delegate.getEntry(key);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public int putEntry(String key, CacheEntry<?> value) {
+        enter();
+        try {
+            return delegate.putEntry(key, value);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void removeEntry(String key) {
+        enter();
+        try {
+            delegate.removeEntry(key);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void expireEntry(String key, CacheEntry<?> expected) {
+        enter();
+        try {
+            delegate.expireEntry(key, expected);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public StatsCounter stats() {
+        return delegate.stats(); // Final after construction; no handshake needed
+    }
+
+    @Override
+    public int size() {
+        return delegate.size(); // A racy read of a count; no handshake needed
+    }
+
+    @Override
+    public long estimatedMemoryBytes() {
+        return delegate.estimatedMemoryBytes();
+    }
+
+    @Override
+    public void clear() {
+        enter();
+        try {
+            delegate.clear();
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        enter();
+        try {
+            delegate.setCapacity(capacity);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public Object getValue(String key, long nowMillis) {
+        enter();
+        try {
+            return delegate.getValue(key, nowMillis);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public Object getValue(CacheKey key, long nowMillis) {
+        enter();
+        try {
+            return delegate.getValue(key, nowMillis);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public Object getValue(KeyProbe key, long nowMillis) {
+        enter();
+        try {
+            return delegate.getValue(key, nowMillis);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public int putValue(CacheKey key, Object value, long expirationTimeMillis) {
+        enter();
+        try {
+            return delegate.putValue(key, value, expirationTimeMillis);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public int putValue(String key, Object value, long expirationTimeMillis) {
+        enter();
+        try {
+            return delegate.putValue(key, value, expirationTimeMillis);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void cleanUp(long nowMillis) {
+        enter();
+        try {
+            delegate.cleanUp(nowMillis);
+        } finally {
+            exit();
+        }
+    }
+}
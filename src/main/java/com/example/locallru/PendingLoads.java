@@ -0,0 +1,172 @@
+package com.example.locallru;
+
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One thread's misses from {@link LocalLruCache#getOrLoadAsync(String)} that are waiting to be loaded
+ * together by the handler's {@link BatchLoader}.
+ * <p>
+ * Each thread has its own, but the handler's {@link BatchDispatcher} may also drain it, to load a batch
+ * whose window ran out while its owner made no further call, or whose owner died. Its methods are
+ * therefore synchronized; they are uncontended unless the dispatcher is at work. Values the dispatcher
+ * loads cannot be written into the owner's thread-local store, so they are handed back here and cached by
+ * the owner on its next call. {@link #invalidate(String)} drops a key's handed-back value, and one the
+ * dispatcher is still loading, so the owner never caches a value loaded before an invalidation.
+ */
+final class PendingLoads {
+    private final WeakReference<Thread> owner;
+    private final Runnable dispatchOwnBatch;
+    private Map<String, CompletableFuture<Object>> pending = new LinkedHashMap<>();
+    private Map<String, Object> loadedForOwner; // null if none
+    private final Set<String> loadingForOwner = new HashSet<>(); // Keys the dispatcher is loading to hand back
+    private long firstMissNanos;
+
+    /**
+     * Creates the calling thread's queue.
+     * @param dispatchOwnBatch Dispatches the calling thread's batch; run when it joins one of its own futures.
+     */
+    PendingLoads(Runnable dispatchOwnBatch) {
+        this.owner = new WeakReference<>(Thread.currentThread());
+        this.dispatchOwnBatch = dispatchOwnBatch;
+    }
+
+    /**
+     * Queues a miss; a key already queued shares the existing future.
+     * @return The future completed when the batch is dispatched.
+     */
+    synchronized CompletableFuture<Object> add(String key) {
+        if (pending.isEmpty()) {
+            firstMissNanos = System.nanoTime();
+        }
+        return pending.computeIfAbsent(key, k -> new BatchFuture<>(Thread.currentThread(), dispatchOwnBatch));
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return True if misses have been waiting for at least {@code maxDelayNanos}.
+     */
+    synchronized boolean isOverdue(long maxDelayNanos) {
+        return !pending.isEmpty() && System.nanoTime() - firstMissNanos >= maxDelayNanos;
+    }
+
+    /**
+     * Takes every queued miss, leaving the queue empty for misses made while they are loaded.
+     */
+    synchronized Map<String, CompletableFuture<Object>> drain() {
+        Map<String, CompletableFuture<Object>> batch = pending;
+        pending = new LinkedHashMap<>();
+        return batch;
+    }
+
+    /**
+     * Called by the dispatcher: takes every queued miss, like {@link #drain()}, to load and then
+     * {@link #handBack(Set, Map) hand back}.
+     */
+    synchronized Map<String, CompletableFuture<Object>> drainForHandBack() {
+        Map<String, CompletableFuture<Object>> batch = drain();
+        loadingForOwner.addAll(batch.keySet());
+        return batch;
+    }
+
+    /**
+     * @return True while the owning thread has not terminated.
+     */
+    boolean isOwnerAlive() {
+        Thread thread = owner.get();
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Called by the dispatcher once it loaded a batch taken with {@link #drainForHandBack()}: keeps the
+     * values for the owner to cache on its next call, except those of keys invalidated meanwhile.
+     * @param keys The batch's keys.
+     * @param loaded The loaded values, or null if the load failed.
+     */
+    synchronized void handBack(Set<String> keys, Map<String, ?> loaded) {
+        for (String key : keys) {
+            Object value = (loaded != null) ? loaded.get(key) : null;
+            if (loadingForOwner.remove(key) && value != null) {
+                if (loadedForOwner == null) {
+                    loadedForOwner = new LinkedHashMap<>();
+                }
+                loadedForOwner.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Drops {@code key}'s handed-back value, and the value the dispatcher may still be loading for it.
+     */
+    synchronized void invalidate(String key) {
+        loadingForOwner.remove(key);
+        if (loadedForOwner != null) {
+            loadedForOwner.remove(key);
+        }
+    }
+
+    /**
+     * Called by the owner.
+     * @return Values the dispatcher loaded since the last call, or null if none.
+     */
+    synchronized Map<String, Object> takeHandedBack() {
+        Map<String, Object> values = loadedForOwner;
+        loadedForOwner = null;
+        return values;
+    }
+
+    /**
+     * The future of a queued miss. Its batch is sent by its owner (or the dispatcher), so an owner that
+     * waited for it without sending the batch would wait forever; waiting on it, or on a future derived
+     * from it, from the owning thread therefore dispatches that thread's batch first.
+     */
+    static final class BatchFuture<T> extends CompletableFuture<T> {
+        private final Thread owner;
+        private final Runnable dispatchOwnBatch;
+
+        BatchFuture(Thread owner, Runnable dispatchOwnBatch) {
+            this.owner = owner;
+            this.dispatchOwnBatch = dispatchOwnBatch;
+        }
+
+        @Override
+        public T join() {
+            dispatchIfOwner();
+            return super.join();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            dispatchIfOwner();
+            return super.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            dispatchIfOwner();
+            return super.get(timeout, unit);
+        }
+
+        /** Makes {@code thenApply} and the like return futures that dispatch on join too. */
+        @Override
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new BatchFuture<>(owner, dispatchOwnBatch);
+        }
+
+        private void dispatchIfOwner() {
+            if (!isDone() && Thread.currentThread() == owner) {
+                dispatchOwnBatch.run();
+            }
+        }
+    }
+}
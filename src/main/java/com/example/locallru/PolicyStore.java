@@ -0,0 +1,180 @@
+package com.example.locallru;
+
+import com.example.locallru.AccessOrder.Node;
+import com.example.locallru.LocalLruCache.CacheEntry;
+import com.example.locallru.LocalLruCache.CacheStore;
+import com.example.locallru.LocalLruCache.RemovalCause;
+import com.example.locallru.LocalLruCache.RemovalListener;
+
+import java.util.HashMap;
+
+/**
+ * Per-thread store for policies other than plain LRU, e.g. {@link LocalLruCache.Policy#WINDOW_TINY_LFU}.
+ * <p>
+ * Like {@link LocalLruCache}'s {@code SimpleLruCache} it is not thread-safe and is only ever used by
+ * its owning thread, but the eviction order is delegated to an {@link AccessOrder}.
+ */
+final class PolicyStore implements CacheStore, TimerWheel.Expirer {
+    /** HashMap node, order node, CacheEntry and table slot. */
+    private static final int ENTRY_OVERHEAD_BYTES = 144;
+
+    private int capacity;
+    private final long maximumWeight; // Long.MAX_VALUE if only the entry count is bounded
+    private final HashMap<String, Node> map;
+    private final AccessOrder order;
+    private final TimerWheel timerWheel; // null if the handler has no TTL
+    private final RemovalListener removalListener; // null if the handler doesn't need one
+    private final StatsCounter stats; // null unless the handler records stats
+    private long totalWeight;
+
+    /**
+     * Creates a PolicyStore.
+     * @param capacity Max entries. Must be positive.
+     * @param maximumWeight Max total weight of entries ({@link Long#MAX_VALUE} for no bound).
+     * @param policy Eviction policy.
+     * @param expiring Whether entries have a TTL and need a timer wheel.
+     * @param nowMillis Current time from the handler's {@link Ticker}.
+     * @param removalListener Notified of every removed entry, or null.
+     * @param stats Counters for this thread, or null.
+     */
+    PolicyStore(int capacity, long maximumWeight, LocalLruCache.Policy policy, boolean expiring, long nowMillis,
+                RemovalListener removalListener, StatsCounter stats) {
+        this.capacity = capacity;
+        this.maximumWeight = maximumWeight;
+        this.map = new HashMap<>(Math.max(16, (int) (capacity / 0.75f) + 1));
+        this.order = AccessOrder.create(policy, capacity);
+        this.timerWheel = expiring ? new TimerWheel(this, nowMillis) : null;
+        this.removalListener = removalListener;
+        this.stats = stats;
+    }
+
+    @Override
+    public CacheEntry<?> getEntry(String key) {
+        Node node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        order.recordAccess(node);
+        return node.value;
+    }
+
+    @Override
+    public int putEntry(String key, CacheEntry<?> value) {
+        schedule(value);
+        totalWeight += value.weight;
+        Node node = map.get(key);
+        if (node != null) {
+            onRemoved(node.value, RemovalCause.REPLACED);
+            node.value = value;
+            order.recordAccess(node);
+        } else {
+            node = new Node(key, value);
+            map.put(key, node);
+            order.recordInsert(node);
+        }
+        return evict();
+    }
+
+    /** @return Number of entries evicted. */
+    private int evict() {
+        int evicted = 0;
+        while (map.size() > capacity || totalWeight > maximumWeight) {
+            Node victim = order.selectVictim();
+            if (victim == null) {
+                break;
+            }
+            map.remove(victim.key);
+            onRemoved(victim.value, RemovalCause.SIZE);
+            evicted++;
+        }
+        return evicted;
+    }
+
+    @Override
+    public void removeEntry(String key) {
+        Node node = map.remove(key);
+        if (node != null) {
+            order.recordRemoval(node);
+            onRemoved(node.value, RemovalCause.EXPLICIT);
+        }
+    }
+
+    @Override
+    public void expireEntry(String key, CacheEntry<?> expected) {
+        Node node = map.get(key);
+        if (node != null && node.value == expected) {
+            map.remove(key);
+            order.recordRemoval(node);
+            onRemoved(expected, RemovalCause.EXPIRED);
+        }
+    }
+
+    @Override
+    public void cleanUp(long nowMillis) {
+        if (timerWheel != null) {
+            timerWheel.advance(nowMillis);
+        }
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public long estimatedMemoryBytes() {
+        return (long) map.size() * ENTRY_OVERHEAD_BYTES;
+    }
+
+    @Override
+    public void clear() {
+        for (Node node : map.values()) {
+            order.recordRemoval(node);
+            onRemoved(node.value, RemovalCause.EXPLICIT);
+        }
+        map.clear();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+        order.setCapacity(capacity);
+        evict();
+    }
+
+    @Override
+    public StatsCounter stats() {
+        return stats;
+    }
+
+    /** Called by the timer wheel for an entry that has expired; it is already unscheduled. */
+    @Override
+    public void expire(CacheEntry<?> entry) {
+        Node node = map.get(entry.key);
+        if (node != null && node.value == entry) {
+            map.remove(entry.key);
+            order.recordRemoval(node);
+            onRemoved(entry, RemovalCause.EXPIRED);
+        }
+    }
+
+    private void schedule(CacheEntry<?> entry) {
+        if (timerWheel != null) {
+            timerWheel.schedule(entry);
+        }
+    }
+
+    /** Bookkeeping for an entry that has left the store by any path. */
+    private void onRemoved(CacheEntry<?> entry, RemovalCause cause) {
+        totalWeight -= entry.weight;
+        if (timerWheel != null) {
+            timerWheel.deschedule(entry);
+        }
+        if (stats != null) {
+            stats.recordRemoval(cause);
+        }
+        if (removalListener != null) {
+            removalListener.onRemoval(entry, cause);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.locallru;
+
+import com.example.locallru.LocalLruCache.CacheEntry;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reloads entries in the background once they are older than a handler's refresh interval, before their
+ * TTL runs out. Enabled with {@link LocalLruCache.Options#refreshAfterWrite(long, java.util.concurrent.TimeUnit)}.
+ * <p>
+ * A read that finds an entry past its refresh point still returns the cached value, but starts a reload
+ * on the handler's executor. Reloads are shared by every thread of the handler: at most one runs per key,
+ * and its result is published here, so each thread whose own copy is older picks it up on its next read
+ * and stores it with a full TTL. Failed reloads are dropped; the cached value keeps being served until it
+ * expires, and the next read past the refresh point tries again.
+ * <p>
+ * {@link #invalidate(String)} forgets a key's reload, finished or running, so no thread adopts a value
+ * that may have been loaded before the invalidation; the next read past the refresh point starts anew.
+ */
+final class RefreshAhead {
+    private final long refreshAfterMillis;
+    private final long ttlMillis;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final int pruneThreshold;
+    private final ConcurrentHashMap<String, Reload> reloads = new ConcurrentHashMap<>();
+
+    /**
+     * @param refreshAfterMillis Age at which an entry is reloaded; less than {@code ttlMillis}.
+     * @param ttlMillis The handler's TTL.
+     * @param executor Runs reloads.
+     * @param ticker The handler's time source.
+     * @param capacity The handler's capacity; bounds how many finished reloads are kept before pruning.
+     */
+    RefreshAhead(long refreshAfterMillis, long ttlMillis, Executor executor, Ticker ticker, int capacity) {
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.ttlMillis = ttlMillis;
+        this.executor = executor;
+        this.ticker = ticker;
+        this.pruneThreshold = Math.max(16, capacity);
+    }
+
+    /**
+     * @return True if a live entry is past its refresh point.
+     */
+    boolean isDue(CacheEntry<?> entry, long nowMillis) {
+        return entry.hasExpiration() && nowMillis >= entry.writeTimeMillis + refreshAfterMillis;
+    }
+
+    /**
+     * Called for an entry that {@link #isDue(CacheEntry, long) is due}: returns a reload that finished
+     * since the entry was written, or starts one if none is running.
+     * @return The newer reload, or null if the caller should keep serving its entry.
+     */
+    Reload poll(String key, CacheEntry<?> entry, CacheLoader<?> loader) {
+        Reload reload = reloads.get(key);
+        if (reload != null) {
+            if (!reload.done) {
+                return null; // Another thread's reload is running
+            }
+            if (reload.loadedAtMillis > entry.writeTimeMillis) {
+                return reload;
+            }
+        }
+        Reload started = new Reload();
+        boolean claimed = (reload == null) ? reloads.putIfAbsent(key, started) == null : reloads.replace(key, reload, started);
+        if (claimed) {
+            if (reloads.size() > pruneThreshold) {
+                prune();
+            }
+            try {
+                executor.execute(() -> run(key, started, loader));
+            } catch (RejectedExecutionException e) {
+                reloads.remove(key, started); // E.g. a shut-down executor: keep serving the cached value
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forgets a reload once it no longer needs to be shared, e.g. after installing it in the shared store.
+     */
+    void remove(String key, Reload reload) {
+        reloads.remove(key, reload);
+    }
+
+    /**
+     * Forgets {@code key}'s reload, if any, and marks it invalidated for threads that already polled it.
+     */
+    void invalidate(String key) {
+        Reload reload = reloads.remove(key);
+        if (reload != null) {
+            reload.invalidated = true;
+        }
+    }
+
+    private void run(String key, Reload reload, CacheLoader<?> loader) {
+        Object value;
+        try {
+            value = loader.load(key);
+        } catch (RuntimeException | Error e) {
+            reloads.remove(key, reload);
+            return;
+        }
+        if (value == null) {
+            reloads.remove(key, reload);
+            return;
+        }
+        reload.value = value;
+        reload.loadedAtMillis = ticker.currentTimeMillis();
+        reload.done = true; // Publishes the fields above
+    }
+
+    /** Drops finished reloads whose values have expired; no thread can use them anymore. */
+    private void prune() {
+        long now = ticker.currentTimeMillis();
+        for (Iterator<Reload> it = reloads.values().iterator(); it.hasNext(); ) {
+            Reload reload = it.next();
+            if (reload.done && now > reload.loadedAtMillis + ttlMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    /** One background reload of a key; {@code value} and {@code loadedAtMillis} are set before {@code done}. */
+    static final class Reload {
+        Object value;
+        long loadedAtMillis;
+        volatile boolean done;
+        volatile boolean invalidated; // The key was invalidated after this reload was polled or started
+    }
+}
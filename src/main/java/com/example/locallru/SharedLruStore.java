@@ -0,0 +1,466 @@
+package com.example.locallru;
+
+import com.example.locallru.AccessOrder.Node;
+import com.example.locallru.LocalLruCache.CacheEntry;
+import com.example.locallru.LocalLruCache.CacheStore;
+import com.example.locallru.LocalLruCache.RemovalCause;
+import com.example.locallru.LocalLruCache.RemovalListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A process-wide LRU store shared by all threads of a {@link LocalLruCache} handler in
+ * {@link LocalLruCache.Mode#SHARED} mode.
+ * <p>
+ * The capacity is split across a power-of-two number of segments. Each segment keeps its entries in a
+ * {@link ConcurrentHashMap} and its eviction order (an {@link AccessOrder}: LRU by default, or
+ * W-TinyLFU) guarded by the segment's lock.
+ * <p>
+ * Reads never take the lock (BP-Wrapper style): a hit is recorded in one of the segment's striped,
+ * lossy ring buffers, and the buffered accesses are replayed into the eviction order later, in batches,
+ * by whichever thread holds the lock next (a writer, or a reader that found its buffer full).
+ * When a buffer is contended or full the access is simply dropped; the order is then slightly
+ * approximate, which is the price of a lock-free read path.
+ * <p>
+ * Eviction is decided per segment, which approximates a global policy closely once segments hold
+ * more than a few entries.
+ * <p>
+ * With a TTL, each segment also owns a {@link TimerWheel}. Writers advance it under the lock they
+ * already hold; {@link #cleanUp(long)} advances all wheels at most once per wheel tick, skipping
+ * segments whose lock is busy rather than waiting for them.
+ */
+final class SharedLruStore implements CacheStore {
+
+    /** Upper bound on stripes; more than this rarely reduces contention further. */
+    private static final int MAX_SEGMENTS = 64;
+
+    /** Read buffers per segment; readers pick one by thread id to avoid CAS contention. */
+    private static final int READ_BUFFERS = 4;
+    private static final int READ_BUFFER_MASK = READ_BUFFERS - 1;
+
+    /** Granularity of {@link #cleanUp(long)}, matching the finest {@link TimerWheel} bucket. */
+    private static final int CLEAN_UP_SHIFT = 10;
+
+    /** ConcurrentHashMap node, order node, CacheEntry and table slot. */
+    private static final int ENTRY_OVERHEAD_BYTES = 144;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final long segmentWeight;
+    private final boolean expiring;
+    private volatile long lastCleanUpTick;
+
+    /**
+     * Creates a shared store.
+     * @param capacity Max entries across all segments. Must be positive.
+     * @param maximumWeight Max total weight across all segments ({@link Long#MAX_VALUE} for no bound).
+     *        It is split evenly, so no single entry may weigh more than one segment's share; see
+     *        {@link #maximumEntryWeight()}.
+     * @param policy Eviction policy applied within each segment.
+     * @param expiring Whether entries have a TTL and need timer wheels.
+     * @param nowMillis Current time from the handler's {@link Ticker}.
+     * @param removalListener Notified of every removed entry, or null: of entries evicted for size once
+     *        the segment lock is released, so spilling them to an overflow tier doesn't hold it; of
+     *        others under the lock.
+     * @param recordStats Whether segments count their evictions and expirations.
+     */
+    SharedLruStore(int capacity, long maximumWeight, LocalLruCache.Policy policy, boolean expiring, long nowMillis,
+                   RemovalListener removalListener, boolean recordStats) {
+        this.expiring = expiring;
+        this.lastCleanUpTick = nowMillis >>> CLEAN_UP_SHIFT;
+        int segmentCount = segmentCount(capacity);
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        // Spread the capacity so the segments sum up to exactly `capacity`.
+        int base = capacity / segmentCount;
+        int remainder = capacity % segmentCount;
+        this.segmentWeight = (maximumWeight == Long.MAX_VALUE) ? Long.MAX_VALUE : maximumWeight / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(base + (i < remainder ? 1 : 0), segmentWeight, policy, expiring, nowMillis,
+                    removalListener, recordStats ? new StatsCounter() : null);
+        }
+    }
+
+    /**
+     * Picks a stripe count from the CPU count, without giving a segment less than one entry.
+     */
+    private static int segmentCount(int capacity) {
+        int target = Math.min(MAX_SEGMENTS, Runtime.getRuntime().availableProcessors() * 2);
+        int count = 1;
+        while (count < target && count * 2 <= capacity) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    /**
+     * @return The heaviest entry a segment can hold, one segment's share of the weight bound. The caller
+     *         must not put heavier entries: the segment would evict everything, then the entry itself.
+     */
+    long maximumEntryWeight() {
+        return segmentWeight;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        // Mix high bits in; ConcurrentHashMap uses the low bits of the same hash for its own bins.
+        h ^= (h >>> 16) ^ (h >>> 7);
+        return segments[h & segmentMask];
+    }
+
+    @Override
+    public CacheEntry<?> getEntry(String key) {
+        return segmentFor(key).get(key);
+    }
+
+    @Override
+    public int putEntry(String key, CacheEntry<?> value) {
+        return segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public void removeEntry(String key) {
+        segmentFor(key).remove(key, null);
+    }
+
+    @Override
+    public void expireEntry(String key, CacheEntry<?> expected) {
+        segmentFor(key).remove(key, expected);
+    }
+
+    @Override
+    public void cleanUp(long nowMillis) {
+        long tick = nowMillis >>> CLEAN_UP_SHIFT;
+        if (!expiring || tick <= lastCleanUpTick) {
+            return; // The common case: a single volatile read.
+        }
+        lastCleanUpTick = tick; // Racing threads may both sweep; that is harmless.
+        for (Segment segment : segments) {
+            segment.tryCleanUp(nowMillis);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long estimatedMemoryBytes() {
+        return (long) size() * ENTRY_OVERHEAD_BYTES;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Splits the new capacity across the segments like the constructor does, but gives each segment at
+     * least one entry, so the total may exceed a capacity smaller than the segment count.
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        int base = capacity / segments.length;
+        int remainder = capacity % segments.length;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].setCapacity(Math.max(1, base + (i < remainder ? 1 : 0)));
+        }
+    }
+
+    /**
+     * Adds the evictions and expirations counted by each segment to {@code total}.
+     * Hits, misses and loads are counted per thread by the handler, since reads take no lock.
+     */
+    void addStatsTo(StatsCounter total) {
+        for (Segment segment : segments) {
+            if (segment.stats != null) {
+                segment.stats.addTo(total);
+            }
+        }
+    }
+
+    /**
+     * One independently locked stripe of the store.
+     */
+    static final class Segment implements TimerWheel.Expirer {
+        private int capacity; // Guarded by lock.
+        private final long maximumWeight;
+        private final ConcurrentHashMap<String, Node> map;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFERS];
+        private final AccessOrder order; // Guarded by lock.
+        private final TimerWheel timerWheel; // Guarded by lock; null if the handler has no TTL.
+        private final RemovalListener removalListener; // null if the handler doesn't need one
+        private List<CacheEntry<?>> evicted; // Guarded by lock: evicted for size, not yet notified; null if none
+        private final StatsCounter stats; // Guarded by lock; null unless the handler records stats.
+        private long totalWeight; // Guarded by lock.
+
+        Segment(int capacity, long maximumWeight, LocalLruCache.Policy policy, boolean expiring, long nowMillis,
+                RemovalListener removalListener, StatsCounter stats) {
+            this.capacity = capacity;
+            this.maximumWeight = maximumWeight;
+            this.order = AccessOrder.create(policy, capacity);
+            this.timerWheel = expiring ? new TimerWheel(this, nowMillis) : null;
+            this.removalListener = removalListener;
+            this.stats = stats;
+            this.map = new ConcurrentHashMap<>(Math.max(16, (int) (capacity / 0.75f) + 1));
+            for (int i = 0; i < READ_BUFFERS; i++) {
+                readBuffers[i] = new ReadBuffer();
+            }
+        }
+
+        CacheEntry<?> get(String key) {
+            Node node = map.get(key);
+            if (node == null) {
+                return null;
+            }
+            recordRead(node);
+            return node.value;
+        }
+
+        int put(String key, CacheEntry<?> value) {
+            List<CacheEntry<?>> victims;
+            int count;
+            lock.lock();
+            try {
+                drainReadBuffers();
+                schedule(value);
+                totalWeight += value.weight;
+                Node node = map.get(key);
+                if (node != null) {
+                    onRemoved(node.value, RemovalCause.REPLACED);
+                    node.value = value;
+                    order.recordAccess(node);
+                } else {
+                    node = new Node(key, value);
+                    map.put(key, node);
+                    order.recordInsert(node);
+                }
+                count = evict();
+                victims = takeEvicted();
+            } finally {
+                lock.unlock();
+            }
+            notifyEvicted(victims);
+            return count;
+        }
+
+        /**
+         * Evicts until within the capacity and weight bound. Caller holds the lock.
+         * @return Number of entries evicted.
+         */
+        private int evict() {
+            int evicted = 0;
+            while (map.size() > capacity || totalWeight > maximumWeight) {
+                Node victim = order.selectVictim();
+                if (victim == null) {
+                    break;
+                }
+                map.remove(victim.key, victim);
+                onRemoved(victim.value, RemovalCause.SIZE);
+                evicted++;
+            }
+            return evicted;
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                drainReadBuffers();
+                for (Node node : map.values()) {
+                    map.remove(node.key, node);
+                    order.recordRemoval(node);
+                    onRemoved(node.value, RemovalCause.EXPLICIT);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void setCapacity(int capacity) {
+            List<CacheEntry<?>> victims;
+            lock.lock();
+            try {
+                drainReadBuffers();
+                this.capacity = capacity;
+                order.setCapacity(capacity);
+                evict();
+                victims = takeEvicted();
+            } finally {
+                lock.unlock();
+            }
+            notifyEvicted(victims);
+        }
+
+        /**
+         * Removes the mapping for {@code key}, or only if its value is {@code expected} when non-null
+         * (which is how the handler removes an entry it found expired).
+         */
+        void remove(String key, CacheEntry<?> expected) {
+            lock.lock();
+            try {
+                Node node = map.get(key);
+                if (node == null || (expected != null && node.value != expected)) {
+                    return;
+                }
+                map.remove(key, node);
+                order.recordRemoval(node);
+                onRemoved(node.value, (expected == null) ? RemovalCause.EXPLICIT : RemovalCause.EXPIRED);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Advances the timer wheel unless another thread holds the lock (it will get there). */
+        void tryCleanUp(long nowMillis) {
+            if (timerWheel != null && lock.tryLock()) {
+                try {
+                    timerWheel.advance(nowMillis);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /** Called by the timer wheel, under the lock, for an entry that has expired. */
+        @Override
+        public void expire(CacheEntry<?> entry) {
+            Node node = map.get(entry.key);
+            if (node != null && node.value == entry) {
+                map.remove(entry.key, node);
+                order.recordRemoval(node);
+                onRemoved(entry, RemovalCause.EXPIRED);
+            }
+        }
+
+        private void schedule(CacheEntry<?> entry) {
+            if (timerWheel != null) {
+                timerWheel.schedule(entry);
+            }
+        }
+
+        /** Bookkeeping for an entry that has left the segment by any path. */
+        private void onRemoved(CacheEntry<?> entry, RemovalCause cause) {
+            totalWeight -= entry.weight;
+            if (timerWheel != null) {
+                timerWheel.deschedule(entry);
+            }
+            if (stats != null) {
+                stats.recordRemoval(cause);
+            }
+            if (removalListener == null) {
+                return;
+            }
+            if (cause == RemovalCause.SIZE) {
+                if (evicted == null) {
+                    evicted = new ArrayList<>();
+                }
+                evicted.add(entry); // Notified by the evicting caller after unlocking
+            } else {
+                removalListener.onRemoval(entry, cause);
+            }
+        }
+
+        /** Caller holds the lock. @return The entries evicted since the last call, or null if none. */
+        private List<CacheEntry<?>> takeEvicted() {
+            List<CacheEntry<?>> victims = evicted;
+            evicted = null;
+            return victims;
+        }
+
+        /** Notifies the listener of entries taken with {@link #takeEvicted()}; caller has released the lock. */
+        private void notifyEvicted(List<CacheEntry<?>> victims) {
+            if (victims != null) {
+                for (CacheEntry<?> victim : victims) {
+                    removalListener.onRemoval(victim, RemovalCause.SIZE);
+                }
+            }
+        }
+
+        private void recordRead(Node node) {
+            ReadBuffer buffer = readBuffers[readBufferIndex()];
+            if (!buffer.offer(node) && lock.tryLock()) {
+                // Our buffer is full: replay pending reads now if nobody else is already doing so.
+                try {
+                    drainReadBuffers();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private static int readBufferIndex() {
+            long id = Thread.currentThread().getId();
+            return (int) (id ^ (id >>> 16)) & READ_BUFFER_MASK;
+        }
+
+        /** Replays buffered reads into the eviction order. Caller holds the lock. */
+        private void drainReadBuffers() {
+            for (ReadBuffer buffer : readBuffers) {
+                buffer.drainTo(this);
+            }
+        }
+
+        void onRead(Node node) {
+            if (node.isLinked()) {
+                order.recordAccess(node);
+            }
+        }
+    }
+
+    /**
+     * A bounded, lossy, multi-producer ring buffer of read events, drained by the lock holder.
+     * Producers claim a slot with one CAS; if the CAS fails or the buffer is full the event is dropped.
+     */
+    static final class ReadBuffer {
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        /**
+         * @return False if the buffer was full (the caller should try to drain it), true otherwise.
+         */
+        boolean offer(Node node) {
+            long tail = writeCounter.get();
+            if (tail - readCounter >= SIZE) {
+                return false;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) tail & MASK, node);
+            }
+            // A lost CAS drops the event; another reader just recorded one.
+            return true;
+        }
+
+        /** Caller holds the owning segment's lock. */
+        void drainTo(Segment segment) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) head & MASK;
+                Node node = slots.get(index);
+                if (node == null) {
+                    break; // Slot claimed but not yet published; pick it up next drain.
+                }
+                slots.lazySet(index, null);
+                segment.onRead(node);
+            }
+            readCounter = head;
+        }
+    }
+}
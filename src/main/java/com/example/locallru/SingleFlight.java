@@ -0,0 +1,100 @@
+package com.example.locallru;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deduplicates concurrent loads of the same key across all threads of one {@link LocalLruCache} handler.
+ * Enabled with {@link LocalLruCache.Options#singleFlightLoading()}.
+ * <p>
+ * The first thread to miss a key registers an in-flight {@link CompletableFuture} and runs the loader;
+ * threads that miss the same key meanwhile wait for that future instead of calling the loader
+ * themselves. Every thread then caches the result in its own store, so an expiry storm over N threads
+ * costs the backend one load instead of N. The in-flight entry is removed as soon as the load
+ * completes; later misses load again.
+ * <p>
+ * {@link #invalidate(String)} detaches a key's in-flight load: misses from then on start a new load
+ * rather than join one that may have read the old data, and the detached load's value is marked
+ * {@link InFlightLoad#isInvalidated() invalidated}, so the threads it returns to do not keep it.
+ */
+final class SingleFlight {
+    private final ConcurrentHashMap<String, InFlightLoad> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Loads {@code key} with {@code loader}, or joins a load of the same key already running on another thread.
+     * @return The finished load, whose value may be null.
+     * @throws IllegalStateException if the loader recursively loads its own key on the same thread.
+     */
+    InFlightLoad load(String key, CacheLoader<?> loader) {
+        InFlightLoad mine = new InFlightLoad(Thread.currentThread());
+        InFlightLoad existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            if (existing.thread == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive load of key: " + key);
+            }
+            join(existing.future);
+            return existing;
+        }
+        try {
+            mine.future.complete(loader.load(key));
+            return mine;
+        } catch (Throwable t) {
+            mine.future.completeExceptionally(t); // Waiting threads see the same failure
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Detaches {@code key}'s in-flight load, if any, and marks it invalidated.
+     */
+    void invalidate(String key) {
+        InFlightLoad load = inFlight.remove(key);
+        if (load != null) {
+            load.invalidated = true;
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /** A load in progress, and the thread running it. */
+    static final class InFlightLoad {
+        private final Thread thread;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private volatile boolean invalidated;
+
+        private InFlightLoad(Thread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * @return The loaded value, possibly null; only valid once {@link #load(String, CacheLoader)} returned.
+         */
+        Object value() {
+            return future.getNow(null);
+        }
+
+        /**
+         * @return True if the key was invalidated while this load ran; its value may be older than the
+         *         invalidation and must not stay cached.
+         */
+        boolean isInvalidated() {
+            return invalidated;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.locallru;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap storage for {@code byte[]} values of handlers created with
+ * {@link LocalLruCache.Options#offHeapBinaryValues(LocalLruCache.OffHeapAccess)}.
+ * <p>
+ * Memory comes from direct {@link ByteBuffer} slabs of 4 MB, each carved into chunks of a single
+ * power-of-two size class from 64 B to 1 MB. A value takes the smallest chunk that fits it, and freed
+ * chunks go back on their class's free list for reuse, so steady-state churn neither allocates native
+ * memory nor leaves work for the GC. Values larger than the biggest class get a dedicated direct buffer,
+ * released by the GC once the entry is gone.
+ * <p>
+ * Thread-safe: each size class is guarded by its own monitor. Reads of a stored value take no lock.
+ */
+final class SlabAllocator {
+
+    private static final int MIN_CLASS_SHIFT = 6;   // 64 B
+    private static final int MAX_CLASS_SHIFT = 20;  // 1 MB
+    private static final int SLAB_SIZE = 4 << 20;   // 4 MB
+
+    private final SizeClass[] sizeClasses = new SizeClass[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    SlabAllocator() {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(1 << (MIN_CLASS_SHIFT + i));
+        }
+    }
+
+    /**
+     * Copies {@code bytes} into off-heap memory.
+     * @return A handle to the stored copy; pass it to {@link #free(OffHeapValue)} once the entry is gone.
+     */
+    OffHeapValue store(byte[] bytes) {
+        int length = bytes.length;
+        OffHeapValue value;
+        if (length > (1 << MAX_CLASS_SHIFT)) {
+            ByteBuffer dedicated = ByteBuffer.allocateDirect(length);
+            reservedBytes.addAndGet(length);
+            value = new OffHeapValue(dedicated, -1, 0, length, -1);
+        } else {
+            int classIndex = classIndex(length);
+            value = sizeClasses[classIndex].allocate(classIndex, length);
+        }
+        value.slab.put(value.offset, bytes);
+        usedBytes.addAndGet(length);
+        return value;
+    }
+
+    /**
+     * Returns a value's memory to its size class. Safe to call more than once, also from racing threads
+     * (e.g. an eviction and a dead thread's store being released): only the first call frees it.
+     */
+    void free(OffHeapValue value) {
+        if (!value.markReleased()) {
+            return;
+        }
+        usedBytes.addAndGet(-value.length);
+        if (value.classIndex < 0) {
+            reservedBytes.addAndGet(-value.length); // Dedicated buffer: reclaimed by the GC.
+        } else {
+            sizeClasses[value.classIndex].free(value);
+        }
+    }
+
+    /**
+     * @return Native memory held in slabs and dedicated buffers, in bytes.
+     */
+    long reservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * @return Bytes of live values currently stored.
+     */
+    long usedBytes() {
+        return usedBytes.get();
+    }
+
+    private static int classIndex(int length) {
+        int shift = (length <= (1 << MIN_CLASS_SHIFT)) ? MIN_CLASS_SHIFT : 32 - Integer.numberOfLeadingZeros(length - 1);
+        return shift - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Slabs and free chunks of one chunk size.
+     */
+    private final class SizeClass {
+        private final int chunkSize;
+        private final List<ByteBuffer> slabs = new ArrayList<>();
+        // Free chunks, encoded as (slab index << 32 | offset).
+        private long[] freeChunks = new long[16];
+        private int freeCount;
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        synchronized OffHeapValue allocate(int classIndex, int length) {
+            if (freeCount == 0) {
+                addSlab();
+            }
+            long chunk = freeChunks[--freeCount];
+            int slabIndex = (int) (chunk >>> 32);
+            int offset = (int) chunk;
+            return new OffHeapValue(slabs.get(slabIndex), classIndex, offset, length, slabIndex);
+        }
+
+        synchronized void free(OffHeapValue value) {
+            push(((long) value.slabIndex << 32) | value.offset);
+        }
+
+        private void addSlab() {
+            int slabIndex = slabs.size();
+            slabs.add(ByteBuffer.allocateDirect(SLAB_SIZE));
+            reservedBytes.addAndGet(SLAB_SIZE);
+            // Push in reverse so chunks are handed out in address order.
+            for (int offset = SLAB_SIZE - chunkSize; offset >= 0; offset -= chunkSize) {
+                push(((long) slabIndex << 32) | offset);
+            }
+        }
+
+        private void push(long chunk) {
+            if (freeCount == freeChunks.length) {
+                long[] grown = new long[freeChunks.length * 2];
+                System.arraycopy(freeChunks, 0, grown, 0, freeCount);
+                freeChunks = grown;
+            }
+            freeChunks[freeCount++] = chunk;
+        }
+    }
+
+    /**
+     * A {@code byte[]} value stored off-heap; this small handle is what the cache entry holds on-heap.
+     */
+    static final class OffHeapValue {
+        private static final VarHandle RELEASED;
+
+        static {
+            try {
+                RELEASED = MethodHandles.lookup().findVarHandle(OffHeapValue.class, "released", boolean.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final ByteBuffer slab;
+        final int classIndex; // -1 for a dedicated buffer
+        final int offset;
+        final int length;
+        final int slabIndex;
+        volatile boolean released;
+
+        OffHeapValue(ByteBuffer slab, int classIndex, int offset, int length, int slabIndex) {
+            this.slab = slab;
+            this.classIndex = classIndex;
+            this.offset = offset;
+            this.length = length;
+            this.slabIndex = slabIndex;
+        }
+
+        /**
+         * @return True for the one caller that released the value, false if it already was.
+         */
+        boolean markReleased() {
+            return RELEASED.compareAndSet(this, false, true);
+        }
+
+        /**
+         * @return A heap copy of the value, or null if it was freed while being copied (shared mode only).
+         */
+        byte[] copy() {
+            byte[] bytes = new byte[length];
+            slab.get(offset, bytes);
+            // Validate after the copy: if the chunk was freed (and maybe reused) meanwhile, the bytes are torn.
+            VarHandle.acquireFence();
+            return released ? null : bytes;
+        }
+
+        /**
+         * @return A read-only view of the off-heap bytes, or null if already freed. The view is only valid
+         *         until the entry leaves the cache, after which its memory may hold another value.
+         */
+        ByteBuffer view() {
+            return released ? null : slab.slice(offset, length).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.locallru;
+
+import com.example.locallru.LocalLruCache.RemovalCause;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Statistics recorded by one thread (or one shared-store segment, under its lock), with plain fields:
+ * there is a single writer at a time, so counting costs an increment and no contention. A thread's
+ * counters may also carry {@link LatencyHistogram}s, allocated up front when the handler records latencies.
+ * <p>
+ * {@link LocalLruCache#stats()} adds all of a handler's counters together on demand. Reads from another
+ * thread are racy and may miss the latest increments, which is acceptable for monitoring.
+ */
+final class StatsCounter {
+    private final WeakReference<Thread> owner; // null if not owned by one thread
+
+    long hits;
+    long misses;
+    long evictions;
+    long expirations;
+    long loadSuccesses;
+    long loadFailures;
+    long totalLoadNanos;
+
+    // Each null unless the handler records that latency.
+    final LatencyHistogram loadLatency;
+    final LatencyHistogram getLatency;
+    final LatencyHistogram addLatency;
+
+    /**
+     * Creates a counter not tied to a thread and without histograms, e.g. for a shared-store segment.
+     */
+    StatsCounter() {
+        this(null, false, false);
+    }
+
+    /**
+     * Creates a counter for one thread's store, or a total if {@code owner} is null.
+     * @param loadLatency Whether to keep a histogram of load times.
+     * @param operationLatency Whether to keep histograms of {@code getItem} and {@code addItem} times.
+     */
+    StatsCounter(Thread owner, boolean loadLatency, boolean operationLatency) {
+        this.owner = (owner != null) ? new WeakReference<>(owner) : null;
+        this.loadLatency = loadLatency ? new LatencyHistogram() : null;
+        this.getLatency = operationLatency ? new LatencyHistogram() : null;
+        this.addLatency = operationLatency ? new LatencyHistogram() : null;
+    }
+
+    /**
+     * @return True once the owning thread has terminated, so the counter can no longer change.
+     */
+    boolean isRetired() {
+        if (owner == null) {
+            return false;
+        }
+        Thread thread = owner.get();
+        return thread == null || !thread.isAlive();
+    }
+
+    /** Counts an entry leaving a store for its size bound or TTL; other causes are not counted. */
+    void recordRemoval(RemovalCause cause) {
+        if (cause == RemovalCause.SIZE) {
+            evictions++;
+        } else if (cause == RemovalCause.EXPIRED) {
+            expirations++;
+        }
+    }
+
+    /**
+     * @param success True if the loader returned a value, false if it returned null or threw.
+     * @param loadNanos Time spent in the loader.
+     */
+    void recordLoad(boolean success, long loadNanos) {
+        if (success) {
+            loadSuccesses++;
+        } else {
+            loadFailures++;
+        }
+        totalLoadNanos += loadNanos;
+        if (loadLatency != null) {
+            loadLatency.record(loadNanos);
+        }
+    }
+
+    /** Adds this counter's values to {@code total}. */
+    void addTo(StatsCounter total) {
+        total.hits += hits;
+        total.misses += misses;
+        total.evictions += evictions;
+        total.expirations += expirations;
+        total.loadSuccesses += loadSuccesses;
+        total.loadFailures += loadFailures;
+        total.totalLoadNanos += totalLoadNanos;
+        if (loadLatency != null && total.loadLatency != null) {
+            loadLatency.addTo(total.loadLatency);
+        }
+        if (getLatency != null && total.getLatency != null) {
+            getLatency.addTo(total.getLatency);
+            addLatency.addTo(total.addLatency);
+        }
+    }
+
+    CacheStats snapshot() {
+        return new CacheStats(hits, misses, evictions, expirations, loadSuccesses, loadFailures, totalLoadNanos);
+    }
+}
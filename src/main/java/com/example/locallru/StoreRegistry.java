@@ -0,0 +1,46 @@
+package com.example.locallru;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * The per-thread stores of one thread-local {@link LocalLruCache} handler, reachable from other threads.
+ * <p>
+ * Stores are held weakly: the only strong reference stays in the owning thread's {@link ThreadLocal},
+ * so a store still becomes garbage when its thread dies. A store found with a dead owner is released
+ * (see {@link ThreadStore#releaseDeadOwner()}) and dropped. Registration happens once per thread, when
+ * the thread first touches the handler, and never on the owner's hot path.
+ */
+final class StoreRegistry {
+    private final ConcurrentLinkedQueue<WeakReference<ThreadStore>> stores = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Registers the calling thread's store.
+     */
+    void register(ThreadStore store) {
+        stores.add(new WeakReference<>(store));
+    }
+
+    /**
+     * Calls {@code action} for every live thread's store, and drops the registrations of collected
+     * stores and terminated threads.
+     */
+    void forEach(Consumer<ThreadStore> action) {
+        for (Iterator<WeakReference<ThreadStore>> it = stores.iterator(); it.hasNext(); ) {
+            ThreadStore store = it.next().get();
+            if (store == null) {
+                it.remove();
+                continue;
+            }
+            if (!store.isOwnerAlive()) {
+                // A dead thread can never touch its store again: free what the GC can't, and let it go.
+                it.remove();
+                store.releaseDeadOwner();
+                continue;
+            }
+            action.accept(store);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.locallru;
+
+import com.example.locallru.LocalLruCache.CacheStore;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One thread's store for a thread-local {@link LocalLruCache} handler, as held by the thread's
+ * {@link ThreadLocal} and, weakly, by the handler's {@link StoreRegistry}.
+ * <p>
+ * Other threads may read its size and memory estimate at any time; those are racy reads of plain
+ * counters. Anything that changes the store is either done under the {@link OwnedStore} handshake, when
+ * the handler has one (with an expiry sweeper or MBean), or posted as a request that the owner applies
+ * the next time it resolves its store. The owner's check for requests is a single volatile read.
+ * <p>
+ * Key invalidations are always posted, to a lock-free queue that any number of threads may add to and
+ * only the owner drains.
+ * <p>
+ * A store whose entries hold resources the GC cannot reclaim (off-heap values) is cleared once its
+ * thread is gone: by the {@link StoreRegistry} when it finds the owner dead, or by a {@link Cleaner}
+ * if the store is collected first.
+ */
+final class ThreadStore {
+    /** Beyond this many undrained invalidations, the store is cleared instead, so an idle owner's queue stays bounded. */
+    static final int MAX_QUEUED_INVALIDATIONS = 1024;
+
+    /** What the owner calls: its own store, or an {@link OwnedStore} around it. */
+    final CacheStore store;
+
+    /** The same store if other threads can lock the owner out of it; null otherwise. */
+    private final OwnedStore owned;
+
+    private final WeakReference<Thread> owner;
+
+    /** Clears {@link #store} once, after its owner is gone; null if its entries need no explicit release. */
+    private final Cleaner.Cleanable release;
+
+    /** Raised after a request is posted; the fields below are guarded by this object's monitor. */
+    private volatile boolean pending;
+    private boolean clearRequested;
+    private int requestedCapacity; // 0 if none
+
+    private final ConcurrentLinkedQueue<String> invalidations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedInvalidations = new AtomicInteger();
+
+    /** Lazily started, so handlers without off-heap values never create the cleaner thread. */
+    private static final class CleanerHolder {
+        static final Cleaner CLEANER = Cleaner.create();
+    }
+
+    /**
+     * Wraps the calling thread's store.
+     * @param store The thread's own store, possibly an {@link OwnedStore}.
+     * @param releaseOnDeath Whether the store must be cleared, releasing its entries through the removal
+     *        listener, once the thread is gone.
+     */
+    ThreadStore(CacheStore store, boolean releaseOnDeath) {
+        this.store = store;
+        this.owned = (store instanceof OwnedStore) ? (OwnedStore) store : null;
+        this.owner = new WeakReference<>(Thread.currentThread());
+        // The action must not reach this object, or it would never become phantom reachable.
+        this.release = releaseOnDeath ? CleanerHolder.CLEANER.register(this, store::clear) : null;
+    }
+
+    /**
+     * @return True while the owning thread has not terminated.
+     */
+    boolean isOwnerAlive() {
+        Thread thread = owner.get();
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Called once the owner has terminated: clears the store if its entries need an explicit release.
+     * Runs at most once, whether from here or from the {@link Cleaner}.
+     */
+    void releaseDeadOwner() {
+        if (release != null) {
+            release.clean();
+        }
+    }
+
+    /**
+     * @return True if requests posted by other threads are waiting for the owner.
+     */
+    boolean hasPendingRequests() {
+        return pending;
+    }
+
+    /**
+     * Called by the owner: applies the requests posted by other threads, in the order clear, invalidations,
+     * then resize.
+     */
+    void applyPendingRequests() {
+        boolean clear;
+        int capacity;
+        synchronized (this) {
+            pending = false; // Before draining, so anything posted from now on raises it again
+            clear = clearRequested;
+            capacity = requestedCapacity;
+            clearRequested = false;
+            requestedCapacity = 0;
+        }
+        if (clear) {
+            store.clear();
+        }
+        String key;
+        while ((key = invalidations.poll()) != null) {
+            queuedInvalidations.decrementAndGet();
+            if (!clear) {
+                store.removeEntry(key);
+            }
+        }
+        if (capacity > 0) {
+            store.setCapacity(capacity);
+        }
+    }
+
+    /**
+     * Removes every entry: at once if the caller is the owner or the store has a handshake, otherwise
+     * on the owner's next call. A store whose thread never uses the handler again is not cleared, but
+     * is collected with its thread.
+     */
+    void clear() {
+        if (owned != null) {
+            owned.runExclusive(CacheStore::clear);
+        } else if (Thread.currentThread() == owner.get()) {
+            store.clear();
+        } else {
+            requestClear();
+        }
+    }
+
+    private synchronized void requestClear() {
+        clearRequested = true;
+        pending = true;
+    }
+
+    /**
+     * Removes {@code key}: at once if the caller is the owner, otherwise on the owner's next call.
+     */
+    void invalidate(String key) {
+        if (Thread.currentThread() == owner.get()) {
+            store.removeEntry(key);
+        } else if (queuedInvalidations.incrementAndGet() > MAX_QUEUED_INVALIDATIONS) {
+            queuedInvalidations.decrementAndGet();
+            requestClear();
+        } else {
+            invalidations.offer(key);
+            pending = true;
+        }
+    }
+
+    /**
+     * Removes each of {@code keys}, with the same timing as {@link #invalidate(String)}.
+     */
+    void invalidateAll(Collection<String> keys) {
+        if (Thread.currentThread() == owner.get()) {
+            for (String key : keys) {
+                store.removeEntry(key);
+            }
+        } else if (queuedInvalidations.addAndGet(keys.size()) > MAX_QUEUED_INVALIDATIONS) {
+            queuedInvalidations.addAndGet(-keys.size());
+            requestClear();
+        } else {
+            invalidations.addAll(keys);
+            pending = true;
+        }
+    }
+
+    /**
+     * Changes the store's capacity, with the same timing as {@link #clear()}.
+     */
+    void setCapacity(int capacity) {
+        if (owned != null) {
+            owned.runExclusive(target -> target.setCapacity(capacity));
+        } else if (Thread.currentThread() == owner.get()) {
+            store.setCapacity(capacity);
+        } else {
+            synchronized (this) {
+                requestedCapacity = capacity;
+                pending = true;
+            }
+        }
+    }
+
+    /**
+     * Called by a sweeper thread; see {@link OwnedStore#trySweep(long)}.
+     * @return Number of entries reclaimed, or -1 if the owner was busy or the store has no handshake.
+     */
+    int trySweep(long nowMillis) {
+        return (owned != null) ? owned.trySweep(nowMillis) : -1;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.locallru;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A source of wall-clock time, in milliseconds, used by {@link LocalLruCache} for TTL bookkeeping.
+ * <p>
+ * Pass one to {@link LocalLruCache.Options#ticker(Ticker)}. Besides the built-in implementations,
+ * tests can supply their own to drive time deterministically instead of sleeping:
+ * <pre>{@code
+ * AtomicLong now = new AtomicLong();
+ * LocalLruCache cache = LocalLruCache.initialize(10, 60, new LocalLruCache.Options().ticker(now::get));
+ * cache.addItem("k", "v");
+ * now.addAndGet(61_000); // "k" is now expired
+ * }</pre>
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * @return The current time in milliseconds, on the same scale as {@link System#currentTimeMillis()}.
+     */
+    long currentTimeMillis();
+
+    /**
+     * @return A ticker that reads {@link System#currentTimeMillis()} on every call (the default).
+     */
+    static Ticker system() {
+        return SystemTicker.INSTANCE;
+    }
+
+    /**
+     * Creates a coarse ticker whose time is refreshed by a background daemon thread every
+     * {@code resolution}. Reads are a plain volatile read, at the cost of the returned time lagging
+     * by up to one resolution step; entries may therefore live up to that much past their TTL.
+     * <p>
+     * Tickers of the same resolution share one updater thread: the first call starts it, and it stops
+     * once every ticker of that resolution has been {@link CachedTicker#close() closed}.
+     *
+     * @param resolution How often the cached time is refreshed. Must be positive.
+     * @param unit Unit of {@code resolution}.
+     * @return A new cached ticker.
+     * @throws IllegalArgumentException if resolution is not positive.
+     */
+    static CachedTicker cached(long resolution, TimeUnit unit) {
+        return CachedTicker.open(unit.toMillis(resolution));
+    }
+
+    /** Reads the system clock directly. */
+    final class SystemTicker implements Ticker {
+        static final SystemTicker INSTANCE = new SystemTicker();
+
+        private SystemTicker() {
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A ticker serving a cached copy of {@link System#currentTimeMillis()} updated by a daemon thread,
+     * which it shares with the other open tickers of its resolution. Call {@link #close()} once it is no
+     * longer used, so the thread can stop.
+     */
+    final class CachedTicker implements Ticker, AutoCloseable {
+        /** Running updaters by resolution in milliseconds; guarded by itself. */
+        private static final Map<Long, Updater> UPDATERS = new HashMap<>();
+
+        private final Updater updater;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private CachedTicker(Updater updater) {
+            this.updater = updater;
+        }
+
+        private static CachedTicker open(long resolutionMillis) {
+            if (resolutionMillis <= 0) {
+                throw new IllegalArgumentException("Resolution must be at least one millisecond.");
+            }
+            synchronized (UPDATERS) {
+                Updater updater = UPDATERS.computeIfAbsent(resolutionMillis, Updater::new);
+                updater.openTickers++;
+                return new CachedTicker(updater);
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return updater.now;
+        }
+
+        /**
+         * Releases this ticker's share of the updater thread, stopping it if no other ticker of the same
+         * resolution is open. A closed ticker may stop advancing. Closing twice has no further effect.
+         */
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (UPDATERS) {
+                if (--updater.openTickers == 0) {
+                    UPDATERS.remove(updater.resolutionMillis);
+                    updater.thread.interrupt();
+                }
+            }
+        }
+
+        /** The daemon thread refreshing the time for every open ticker of one resolution. */
+        private static final class Updater implements Runnable {
+            final long resolutionMillis;
+            final Thread thread;
+            volatile long now;
+            int openTickers; // Guarded by UPDATERS
+
+            Updater(long resolutionMillis) {
+                this.resolutionMillis = resolutionMillis;
+                this.now = System.currentTimeMillis();
+                this.thread = new Thread(this, "LocalLruCache-ticker-" + resolutionMillis + "ms");
+                this.thread.setDaemon(true);
+                this.thread.start();
+            }
+
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(resolutionMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    now = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+}
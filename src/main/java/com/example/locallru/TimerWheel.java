@@ -0,0 +1,161 @@
+package com.example.locallru;
+
+import com.example.locallru.LocalLruCache.CacheEntry;
+
+/**
+ * A hierarchical timing wheel that reclaims expired entries of one store in amortized O(1).
+ * <p>
+ * Entries with a TTL are linked (intrusively, through {@link CacheEntry}) into a bucket chosen by
+ * their expiration time. Each level of the wheel covers a coarser span: about a second per bucket
+ * for the first 65 seconds, a minute per bucket for the next hour, and so on, with a final overflow
+ * bucket. As time advances, the buckets that have been passed are emptied: entries that are due are
+ * handed to the {@link Expirer}, and entries from a coarse bucket that are not due yet cascade down
+ * into a finer one. Scheduling, descheduling and each cascade step are O(1).
+ * <p>
+ * The wheel is advanced by the owning store during normal {@code addItem}/{@code getItem} traffic, so
+ * expired entries stop occupying capacity without a background thread. Not thread-safe: callers
+ * confine it to one thread or guard it with the store's lock.
+ */
+final class TimerWheel {
+
+    /** Number of buckets per level. */
+    private static final int[] BUCKETS = {64, 64, 16, 4, 1};
+
+    /** Span of one bucket per level, in milliseconds (~1s, ~1m, ~1.2h, ~18.6h, ~3.1d). */
+    private static final long[] SPANS = {
+            1L << 10, 1L << 16, 1L << 22, 1L << 26, 1L << 28, 1L << 28};
+
+    /** log2 of each span, to turn a time into ticks of that level. */
+    private static final int[] SHIFT = {10, 16, 22, 26, 28};
+
+    /**
+     * Receives entries whose expiration time has passed, by {@link CacheEntry#isExpired(long)}: an entry
+     * is still live at its expiration time itself. The store drops them from its mapping.
+     */
+    interface Expirer {
+        void expire(CacheEntry<?> entry);
+    }
+
+    private final CacheEntry<?>[][] wheel;
+    private final Expirer expirer;
+    private long timeMillis;
+
+    /**
+     * @param expirer Callback that removes an expired entry from the owning store.
+     * @param nowMillis Current time from the handler's {@link Ticker}.
+     */
+    TimerWheel(Expirer expirer, long nowMillis) {
+        this.expirer = expirer;
+        this.timeMillis = nowMillis;
+        this.wheel = new CacheEntry<?>[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new CacheEntry<?>[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                CacheEntry<?> sentinel = CacheEntry.sentinel();
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel to {@code nowMillis}, expiring or cascading the entries of every bucket passed.
+     * Returns immediately unless at least one first-level tick (~1s) has elapsed since the last call.
+     */
+    void advance(long nowMillis) {
+        long previous = timeMillis;
+        if ((nowMillis >>> SHIFT[0]) <= (previous >>> SHIFT[0])) {
+            return;
+        }
+        timeMillis = nowMillis;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = nowMillis >>> SHIFT[i];
+            if (currentTicks <= previousTicks) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks);
+        }
+    }
+
+    /**
+     * Schedules an entry by its expiration time. Entries without a TTL are ignored.
+     */
+    void schedule(CacheEntry<?> entry) {
+        if (!entry.hasExpiration()) {
+            return;
+        }
+        CacheEntry<?> sentinel = findBucket(entry.expirationTimeMillis);
+        link(sentinel, entry);
+    }
+
+    /**
+     * Removes an entry from the wheel if it is scheduled.
+     */
+    void deschedule(CacheEntry<?> entry) {
+        if (entry.timerNext != null) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Empties the buckets of level {@code index} passed between the two tick counts.
+     */
+    private void expire(int index, long previousTicks, long currentTicks) {
+        CacheEntry<?>[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+        // At most one full rotation needs visiting, however long ago the last advance was.
+        int steps = (int) Math.min(currentTicks - previousTicks + 1, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            CacheEntry<?> sentinel = timerWheel[i & mask];
+            CacheEntry<?> node = sentinel.timerNext;
+            sentinel.timerPrev = sentinel;
+            sentinel.timerNext = sentinel;
+            while (node != sentinel) {
+                CacheEntry<?> next = node.timerNext;
+                node.timerPrev = null;
+                node.timerNext = null;
+                if (node.isExpired(timeMillis)) {
+                    expirer.expire(node);
+                } else {
+                    schedule(node); // Not due yet: cascade into a finer bucket, or back into this one.
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the bucket whose span covers the given expiration time.
+     */
+    private CacheEntry<?> findBucket(long expirationMillis) {
+        // Already due: the current bucket is visited by the next advance.
+        expirationMillis = Math.max(expirationMillis, timeMillis);
+        long duration = expirationMillis - timeMillis;
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = expirationMillis >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    private static void link(CacheEntry<?> sentinel, CacheEntry<?> entry) {
+        entry.timerPrev = sentinel.timerPrev;
+        entry.timerNext = sentinel;
+        sentinel.timerPrev.timerNext = entry;
+        sentinel.timerPrev = entry;
+    }
+
+    private static void unlink(CacheEntry<?> entry) {
+        entry.timerPrev.timerNext = entry.timerNext;
+        entry.timerNext.timerPrev = entry.timerPrev;
+        entry.timerPrev = null;
+        entry.timerNext = null;
+    }
+}
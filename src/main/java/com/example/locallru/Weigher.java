@@ -0,0 +1,54 @@
+package com.example.locallru;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Computes the weight of a cache entry, for handlers bounded by total weight rather than entry count.
+ * <p>
+ * Pass one to {@link LocalLruCache.Options#weigher(Weigher)} together with
+ * {@link LocalLruCache.Options#maximumWeight(long)}. Weights are computed once, when an item is added,
+ * and must not be negative. For example, to bound a cache by payload bytes:
+ * <pre>{@code
+ * LocalLruCache files = LocalLruCache.initialize(10_000, 300, new LocalLruCache.Options()
+ *         .maximumWeight(64L * 1024 * 1024)                       // 64 MB per thread
+ *         .weigher(Weigher.builtIn(Weigher.singleton())));        // byte[]/String/ByteBuffer by size
+ * }</pre>
+ */
+@FunctionalInterface
+public interface Weigher {
+
+    /**
+     * @param key Item's key.
+     * @param value Item's value.
+     * @return The weight of the entry; never negative.
+     */
+    int weigh(String key, Object value);
+
+    /**
+     * @return A weigher that gives every entry a weight of 1, i.e. counts entries.
+     */
+    static Weigher singleton() {
+        return (key, value) -> 1;
+    }
+
+    /**
+     * Sizes {@code byte[]} by length, {@code String} by its UTF-16 size (two bytes per char) and
+     * {@code ByteBuffer} by capacity, delegating every other value type to {@code otherTypes}.
+     * @param otherTypes Weigher for values of any other type.
+     * @return A weigher measuring common payload types in bytes.
+     */
+    static Weigher builtIn(Weigher otherTypes) {
+        return (key, value) -> {
+            if (value instanceof byte[]) {
+                return ((byte[]) value).length;
+            }
+            if (value instanceof String) {
+                return (int) Math.min(Integer.MAX_VALUE, 2L * ((String) value).length());
+            }
+            if (value instanceof ByteBuffer) {
+                return ((ByteBuffer) value).capacity();
+            }
+            return otherTypes.weigh(key, value);
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.locallru;
+
+/**
+ * W-TinyLFU eviction order.
+ * <p>
+ * New entries land in a small LRU <i>admission window</i> (about 1% of capacity). Entries pushed out
+ * of the window become <i>candidates</i> for the segmented main region, whose <i>probation</i>
+ * segment holds entries seen once and whose <i>protected</i> segment (80% of the main region) holds
+ * entries hit again while on probation. When the store is full, a candidate is only admitted if its
+ * estimated access frequency beats that of the probation segment's LRU victim; otherwise the candidate
+ * itself is evicted. One-hit wonders therefore cannot flush frequently used entries during bursts.
+ */
+final class WindowTinyLfuOrder extends AccessOrder {
+
+    private static final byte WINDOW = 1;
+    private static final byte PROBATION = 2;
+    private static final byte PROTECTED = 3;
+
+    private final NodeQueue window = new NodeQueue(WINDOW);
+    private final NodeQueue probation = new NodeQueue(PROBATION);
+    private final NodeQueue protectedQueue = new NodeQueue(PROTECTED);
+
+    private int maxWindow;
+    private int maxProtected;
+    private final FrequencySketch sketch;
+
+    /**
+     * @param capacity Max entries of the owning store. Must be positive.
+     */
+    WindowTinyLfuOrder(int capacity) {
+        setCapacity(capacity);
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * Resizes the window and protected segments; they drain down to their new limits as entries move.
+     * The sketch keeps the size it was created with.
+     */
+    @Override
+    void setCapacity(int capacity) {
+        this.maxWindow = Math.max(1, capacity / 100);
+        this.maxProtected = (int) ((capacity - maxWindow) * 0.8);
+    }
+
+    @Override
+    void recordInsert(Node node) {
+        sketch.increment(node.key);
+        window.addLast(node);
+    }
+
+    @Override
+    void recordAccess(Node node) {
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                // A second hit while on probation earns a place in the protected segment.
+                probation.remove(node);
+                protectedQueue.addLast(node);
+                if (protectedQueue.size() > maxProtected) {
+                    Node demoted = protectedQueue.peekFirst();
+                    protectedQueue.remove(demoted);
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedQueue.moveToLast(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    void recordRemoval(Node node) {
+        if (node.isLinked()) {
+            queueOf(node).remove(node);
+        }
+    }
+
+    @Override
+    Node selectVictim() {
+        // Move window overflow into probation; the most recent one competes for admission.
+        Node candidate = null;
+        while (window.size() > maxWindow) {
+            Node node = window.peekFirst();
+            window.remove(node);
+            probation.addLast(node);
+            candidate = node;
+        }
+
+        Node victim = probation.peekFirst();
+        if (candidate != null && victim != null && victim != candidate) {
+            Node loser = admit(candidate, victim) ? victim : candidate;
+            probation.remove(loser);
+            return loser;
+        }
+        // No contest: evict in probation, protected, window order.
+        NodeQueue from = (probation.size() > 0) ? probation
+                : (protectedQueue.size() > 0) ? protectedQueue : window;
+        Node eldest = from.peekFirst();
+        if (eldest != null) {
+            from.remove(eldest);
+        }
+        return eldest;
+    }
+
+    /**
+     * TinyLFU admission: the candidate enters the main region only if it is used more often than the victim.
+     */
+    private boolean admit(Node candidate, Node victim) {
+        return sketch.frequency(candidate.key) > sketch.frequency(victim.key);
+    }
+
+    private NodeQueue queueOf(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedQueue;
+        }
+    }
+}